@@ -0,0 +1,78 @@
+package warehouse;
+
+import jade.core.AID;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AllocationBenchmark - Coordinator and robot work on the allocation hot path
+ *
+ * Covers the robot's bid cost (path length on the shared planner), the
+ * coordinator's nearest-candidate selection from RobotIndex, and winner
+ * selection over a full set of proposals, for fleets of different sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocationBenchmark {
+
+    private static final int GRID_SIZE = 20;
+    private static final int TARGETS = 64;
+
+    @Param({"10", "100", "1000"})
+    public int robots;
+
+    private PathPlanner planner;
+    private RobotIndex robotIndex;
+    private Map<AID, Double> proposals;
+    private int[][] targets;
+    private int[][] positions;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        planner = new PathPlanner(WarehouseMap.createDefault());
+        robotIndex = new RobotIndex(GRID_SIZE, CoordinatorAgent.INDEX_CELL_SIZE);
+        proposals = new HashMap<>();
+        positions = new int[robots][];
+        for (int i = 0; i < robots; i++) {
+            AID robot = new AID("robot" + i, AID.ISGUID);
+            positions[i] = new int[]{random.nextInt(GRID_SIZE), random.nextInt(GRID_SIZE)};
+            robotIndex.update(robot, positions[i][0], positions[i][1], 100, random.nextInt(4) != 0);
+            proposals.put(robot, random.nextDouble() * 100);
+        }
+        targets = new int[TARGETS][];
+        for (int i = 0; i < TARGETS; i++) {
+            targets[i] = new int[]{random.nextInt(GRID_SIZE), random.nextInt(GRID_SIZE)};
+        }
+    }
+
+    private int[] nextTarget() {
+        next = (next + 1) % TARGETS;
+        return targets[next];
+    }
+
+    @Benchmark
+    public double calculateCost() {
+        int[] target = nextTarget();
+        int[] from = positions[next % robots];
+        return TransportAgent.calculateCost(planner, from[0], from[1], 80, false, target[0], target[1]);
+    }
+
+    @Benchmark
+    public List<AID> selectCandidates() {
+        int[] target = nextTarget();
+        return robotIndex.nearestAvailable(target[0], target[1], CoordinatorAgent.DEFAULT_CFP_FANOUT);
+    }
+
+    @Benchmark
+    public AID selectWinner() {
+        return TaskAllocator.selectWinner(proposals);
+    }
+}
@@ -0,0 +1,94 @@
+package warehouse;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchAssignmentBenchmark - Cost of one batch allocation versus greedy award
+ *
+ * Builds a task x robot bid matrix the way the coordinator does in BATCH
+ * mode (each task bids from its nearest robots, others are NO_BID) and
+ * measures the Hungarian solve against awarding tasks one by one to their
+ * cheapest free bidder. Both return the total cost of the assignment.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchAssignmentBenchmark {
+
+    private static final int GRID_SIZE = 20;
+    private static final int BIDS_PER_TASK = 2 * CoordinatorAgent.DEFAULT_CFP_FANOUT;
+
+    @Param({"5", "20", "100"})
+    public int tasks;
+
+    private double[][] cost;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        PathPlanner planner = new PathPlanner(WarehouseMap.createDefault());
+        WarehouseMap map = planner.getMap();
+        int robots = tasks * 2;
+        int[][] positions = new int[robots][];
+        for (int j = 0; j < robots; j++) {
+            int cell = map.nearestFreeCell(random.nextInt(GRID_SIZE), random.nextInt(GRID_SIZE));
+            positions[j] = new int[]{map.cellX(cell), map.cellY(cell)};
+        }
+        cost = new double[tasks][robots];
+        for (int i = 0; i < tasks; i++) {
+            int x = random.nextInt(GRID_SIZE);
+            int y = random.nextInt(GRID_SIZE);
+            Arrays.fill(cost[i], AssignmentSolver.NO_BID);
+            Integer[] order = new Integer[robots];
+            for (int j = 0; j < robots; j++) {
+                order[j] = j;
+            }
+            Arrays.sort(order, Comparator.comparingInt(j ->
+                    Math.abs(positions[j][0] - x) + Math.abs(positions[j][1] - y)));
+            for (int b = 0; b < Math.min(BIDS_PER_TASK, robots); b++) {
+                int j = order[b];
+                double bid = TransportAgent.calculateCost(planner, positions[j][0], positions[j][1], 100, false, x, y);
+                if (bid >= 0) {
+                    cost[i][j] = bid;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public double hungarian() {
+        int[] match = AssignmentSolver.solve(cost);
+        double total = 0;
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] >= 0) {
+                total += cost[i][match[i]];
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double greedy() {
+        boolean[] taken = new boolean[cost[0].length];
+        double total = 0;
+        for (double[] bids : cost) {
+            int best = -1;
+            for (int j = 0; j < bids.length; j++) {
+                if (!taken[j] && bids[j] != AssignmentSolver.NO_BID && (best < 0 || bids[j] < bids[best])) {
+                    best = j;
+                }
+            }
+            if (best >= 0) {
+                taken[best] = true;
+                total += bids[best];
+            }
+        }
+        return total;
+    }
+}
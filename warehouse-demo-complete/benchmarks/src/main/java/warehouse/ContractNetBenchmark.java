@@ -0,0 +1,160 @@
+package warehouse;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentController;
+import jade.wrapper.ContainerController;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ContractNetBenchmark - End-to-end contract-net rounds against real TransportAgents
+ *
+ * Starts an in-process JADE main container with N TransportAgents and a
+ * driver agent playing the coordinator. One operation is a full round:
+ * CFP to every robot, wait for all PROPOSE/REFUSE answers, pick the winner
+ * with TaskAllocator.selectWinner and send the award. The award is a
+ * REJECT_PROPOSAL so the robots stay idle and every round is comparable.
+ *
+ * Agent console output is discarded during the trial so that the numbers
+ * are not dominated by the forked JVM's stdout pipe.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContractNetBenchmark {
+
+    private static final String PORT = "1399";
+
+    @Param({"4", "32"})
+    public int robots;
+
+    private ContainerController container;
+    private DriverAgent driver;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void startPlatform() throws Exception {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+
+        Runtime runtime = Runtime.instance();
+        runtime.setCloseVM(false);
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.LOCAL_PORT, PORT);
+        profile.setParameter(Profile.NO_MTP, "true");
+        profile.setParameter(Profile.GUI, "false");
+        container = runtime.createMainContainer(profile);
+
+        Random random = new Random(42);
+        List<AID> robotIds = new ArrayList<>();
+        for (int i = 1; i <= robots; i++) {
+            AgentController robot = container.createNewAgent("robot" + i, TransportAgent.class.getName(),
+                    new Object[]{random.nextInt(20), random.nextInt(20)});
+            robot.start();
+            robotIds.add(new AID(robot.getName(), AID.ISGUID));
+        }
+
+        driver = new DriverAgent(robotIds);
+        container.acceptNewAgent("driver", driver).start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopPlatform() throws Exception {
+        container.kill();
+        Runtime.instance().shutDown();
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public AID cfpToAward() throws InterruptedException {
+        return driver.runRound();
+    }
+
+    /**
+     * Stand-in coordinator that runs one contract-net round per call
+     */
+    public static class DriverAgent extends Agent {
+        private final List<AID> robots;
+        private final BlockingQueue<AID> winners = new ArrayBlockingQueue<>(1);
+        private final Map<AID, Double> proposals = new HashMap<>();
+        private final byte[] cfpPayload = TaskCodec.encodeTask(
+                new TransportTask(1, ItemType.WOOD_PLANKS, 10, 9, 10, 10, 0));
+        private volatile String currentRound;
+        private int answers;
+        private int roundCounter;
+
+        DriverAgent(List<AID> robots) {
+            this.robots = robots;
+        }
+
+        protected void setup() {
+            addBehaviour(new CyclicBehaviour() {
+                public void action() {
+                    ACLMessage msg = receive();
+                    if (msg == null) {
+                        block();
+                        return;
+                    }
+                    if (!Objects.equals(msg.getInReplyTo(), currentRound)) {
+                        return;
+                    }
+                    byte[] bid = TaskCodec.proposalPayload(msg);
+                    if (msg.getPerformative() == ACLMessage.PROPOSE && bid != null) {
+                        proposals.put(msg.getSender(), TaskCodec.proposalCost(bid));
+                    }
+                    if (++answers == robots.size()) {
+                        award();
+                    }
+                }
+            });
+        }
+
+        private void award() {
+            AID winner = TaskAllocator.selectWinner(proposals);
+            ACLMessage award = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
+            for (AID robot : proposals.keySet()) {
+                award.addReceiver(robot);
+            }
+            award.setConversationId("BENCH");
+            send(award);
+            winners.offer(winner == null ? getAID() : winner);
+        }
+
+        /**
+         * Called from the benchmark thread; returns once the round is awarded
+         */
+        AID runRound() throws InterruptedException {
+            proposals.clear();
+            answers = 0;
+            currentRound = "BENCH-" + (++roundCounter);
+
+            ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+            for (AID robot : robots) {
+                cfp.addReceiver(robot);
+            }
+            cfp.setConversationId("BENCH");
+            cfp.setReplyWith(currentRound);
+            cfp.setByteSequenceContent(cfpPayload);
+            send(cfp);
+            return winners.take();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package warehouse;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventLogBenchmark - Cost of one log call on an agent thread
+ *
+ * Compares the old style (string concatenation plus println on a shared
+ * PrintStream) with EventLog at a disabled level and at an enabled level,
+ * from four threads at once as with several agents in one container. The
+ * event log writer and the PrintStream both write to /dev/null, so only
+ * the agent-side cost is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dwarehouse.log.file=/dev/null", "-Dwarehouse.log.level=INFO"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class EventLogBenchmark {
+
+    private PrintStream console;
+
+    @Setup
+    public void setup() throws IOException {
+        console = new PrintStream(new BufferedOutputStream(new FileOutputStream("/dev/null")), false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        console.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Proposal {
+        String agent = "robot" + Thread.currentThread().getId();
+        String taskId = "TASK-42";
+        double cost = 23.4;
+    }
+
+    @Benchmark
+    public void println(Proposal p) {
+        console.println(p.agent + " proposed cost " + p.cost + " for " + p.taskId);
+    }
+
+    @Benchmark
+    public void eventLogDisabled(Proposal p) {
+        EventLog.log(EventLog.Level.DEBUG, p.agent, "PROPOSED", p.taskId, null,
+                EventLog.NONE, EventLog.NONE, p.cost);
+    }
+
+    @Benchmark
+    public void eventLogEnabled(Proposal p) {
+        EventLog.log(EventLog.Level.INFO, p.agent, "PROPOSED", p.taskId, null,
+                EventLog.NONE, EventLog.NONE, p.cost);
+    }
+}
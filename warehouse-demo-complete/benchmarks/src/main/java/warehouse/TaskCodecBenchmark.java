@@ -0,0 +1,63 @@
+package warehouse;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskCodecBenchmark - Old colon-delimited content strings vs TaskCodec
+ *
+ * Each operation is what one robot costs the system per CFP: read the task
+ * it is bidding on, build a proposal, and have the coordinator read the bid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TaskCodecBenchmark {
+
+    private String cfpString;
+    private byte[] cfpBytes;
+    private double cost = 17.5;
+
+    @Setup
+    public void setup() {
+        TransportTask task = new TransportTask(42, ItemType.WOOD_PLANKS, 7, 13, 10, 10, 20);
+        cfpString = task.getTaskId() + ":TRANSPORT:" + ItemType.describe(task.items) + ":" +
+                task.pickupX + "," + task.pickupY + ":" +
+                task.deliveryX + "," + task.deliveryY + ":" + task.urgency;
+        cfpBytes = TaskCodec.encodeTask(task);
+    }
+
+    /**
+     * The pre-codec path: split the CFP, parse the pickup, format and re-parse "COST:x"
+     */
+    @Benchmark
+    public void stringCfpAndProposal(Blackhole bh) {
+        String[] parts = cfpString.split(":");
+        String[] pickup = parts[3].split(",");
+        bh.consume(Integer.parseInt(pickup[0]));
+        bh.consume(Integer.parseInt(pickup[1]));
+        String proposal = "COST:" + cost;
+        bh.consume(Double.parseDouble(proposal.split(":")[1]));
+    }
+
+    /**
+     * The TaskCodec path: read fields in place, encode and decode a binary bid
+     */
+    @Benchmark
+    public void binaryCfpAndProposal(Blackhole bh) {
+        bh.consume(TaskCodec.pickupX(cfpBytes));
+        bh.consume(TaskCodec.pickupY(cfpBytes));
+        byte[] proposal = TaskCodec.encodeProposal(TaskCodec.taskNumber(cfpBytes), cost);
+        bh.consume(TaskCodec.proposalCost(proposal));
+    }
+
+    @Benchmark
+    public TransportTask binaryDecodeTask() {
+        return TaskCodec.decodeTask(cfpBytes);
+    }
+}
@@ -0,0 +1,84 @@
+package warehouse;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskJournalBenchmark - Coordinator restart time and per-task journal cost
+ *
+ * recover opens a journal of taskCount full task lifecycles (created,
+ * assigned, finished; the last 1000 left open) with compaction off, as
+ * after a long run without a snapshot, and rebuilds the open tasks.
+ * lifecycle journals one task from request to completion, with the
+ * periodic checkpoint (flush and compaction) amortised over the tasks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TaskJournalBenchmark {
+
+    private static final int OPEN_TASKS = 1000;
+
+    @Param({"100000", "300000"})
+    public int taskCount;
+
+    private File dir;
+    private TaskJournal journal;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("journal-bench").toFile();
+        TaskJournal writer = new TaskJournal(dir, "recover", Long.MAX_VALUE);
+        for (int i = 1; i <= taskCount; i++) {
+            lifecycle(writer, i, i <= taskCount - OPEN_TASKS);
+        }
+        writer.close();
+        journal = new TaskJournal(dir, "append", TaskJournal.DEFAULT_COMPACT_BYTES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        journal.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static void lifecycle(TaskJournal journal, int number, boolean finish) {
+        TransportTask task = new TransportTask(number, ItemType.WOOD_PLANKS, 7, 13, 10, 10, 20);
+        journal.created(number, number, System.currentTimeMillis(), "sawing@10.0.0.1:1099/JADE",
+                "material-request-sawing-" + number, TaskCodec.encodeTask(task));
+        journal.assigned(number, System.currentTimeMillis(), "robot" + (number % 50) + "@10.0.0.1:1099/JADE");
+        if (finish) {
+            journal.finished(number);
+        }
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        TaskJournal recovered = new TaskJournal(dir, "recover", Long.MAX_VALUE);
+        recovered.close();
+        return recovered.openTasks().size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void lifecycle() {
+        lifecycle(journal, ++next, true);
+        if ((next & 0xffff) == 0) {
+            journal.checkpoint(); // As the coordinator's ticker would, so the journal is compacted
+        }
+    }
+}
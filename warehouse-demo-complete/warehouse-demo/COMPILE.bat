@@ -40,7 +40,8 @@ echo.
 
 REM Compile all Java files
 echo Compiling agents...
-javac -cp jade.jar CoordinatorAgent.java TransportAgent.java ProductionStationAgent.java
+if not exist classes mkdir classes
+javac -cp jade.jar -d classes src\main\java\warehouse\*.java
 
 if errorlevel 1 (
     echo.
@@ -57,7 +58,7 @@ echo SUCCESS! Compilation complete.
 echo ========================================
 echo.
 echo Generated files:
-dir /b *.class
+dir /b classes\warehouse\*.class
 echo.
 echo Next step: Run RUN.bat to start the system
 echo.
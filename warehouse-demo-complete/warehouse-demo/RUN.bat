@@ -14,6 +14,7 @@ echo using Multi-Agent Systems technology.
 echo.
 echo System Components:
 echo - 1 CoordinatorAgent (manages task allocation)
+echo - 1 TrafficControlAgent (reserves collision-free routes)
 echo - 4 TransportAgents (autonomous robots)
 echo - 2 ProductionStationAgents (manufacturing stations)
 echo.
@@ -33,7 +34,7 @@ echo ========================================
 echo.
 
 REM Check if compiled
-if not exist CoordinatorAgent.class (
+if not exist classes\warehouse\CoordinatorAgent.class (
     echo ERROR: Classes not compiled!
     echo Please run COMPILE.bat first
     echo.
@@ -49,7 +50,7 @@ timeout /t 3
 
 REM Run JADE with all agents
 REM CRITICAL: NO SPACES after semicolons in agent list!
-java -cp jade.jar;. jade.Boot -gui coordinator:CoordinatorAgent;robot1:TransportAgent(5,5);robot2:TransportAgent(15,5);robot3:TransportAgent(5,15);robot4:TransportAgent(15,15);sawing:ProductionStationAgent(SAWING);drilling:ProductionStationAgent(DRILLING)
+java -cp jade.jar;classes jade.Boot -gui coordinator:warehouse.CoordinatorAgent;traffic:warehouse.TrafficControlAgent;stock:warehouse.StockAgent;robot1:warehouse.TransportAgent(5,5);robot2:warehouse.TransportAgent(15,5);robot3:warehouse.TransportAgent(5,15);robot4:warehouse.TransportAgent(15,15);sawing:warehouse.ProductionStationAgent(SAWING);drilling:warehouse.ProductionStationAgent(DRILLING)
 
 echo.
 echo System stopped.
@@ -0,0 +1,114 @@
+package warehouse;
+
+import java.util.Arrays;
+
+/**
+ * AssignmentSolver - Minimum-cost task-to-robot matching (Hungarian algorithm)
+ *
+ * Takes a rectangular cost matrix (rows = tasks, columns = robots) and
+ * returns, for every row, the column it is matched to, or -1 if the row is
+ * left unmatched. Missing bids are marked with NO_BID and are never used.
+ * Runs in O(n^2 * m) for n <= m (the matrix is transposed otherwise).
+ */
+public final class AssignmentSolver {
+
+    public static final double NO_BID = Double.POSITIVE_INFINITY;
+
+    // Stand-in for NO_BID inside the algorithm, larger than any real total
+    private static final double FORBIDDEN = 1e12;
+
+    private AssignmentSolver() {
+    }
+
+    public static int[] solve(double[][] cost) {
+        int rows = cost.length;
+        int columns = rows == 0 ? 0 : cost[0].length;
+        if (rows == 0 || columns == 0) {
+            int[] none = new int[rows];
+            Arrays.fill(none, -1);
+            return none;
+        }
+
+        if (rows <= columns) {
+            return hungarian(cost, rows, columns, false);
+        }
+        // More tasks than robots: solve the transposed problem and invert the result
+        int[] columnToRow = hungarian(cost, columns, rows, true);
+        int[] rowToColumn = new int[rows];
+        Arrays.fill(rowToColumn, -1);
+        for (int column = 0; column < columns; column++) {
+            if (columnToRow[column] >= 0) {
+                rowToColumn[columnToRow[column]] = column;
+            }
+        }
+        return rowToColumn;
+    }
+
+    /**
+     * Classic potentials-based Hungarian algorithm over an n x m matrix with n <= m.
+     * When transposed is set, entry (i, j) is read from cost[j][i].
+     */
+    private static int[] hungarian(double[][] cost, int n, int m, boolean transposed) {
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] p = new int[m + 1];   // p[j] = row matched to column j (1-based, 0 = free)
+        int[] way = new int[m + 1];
+        double[] minv = new double[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (!used[j]) {
+                        double current = entry(cost, i0 - 1, j - 1, transposed) - u[i0] - v[j];
+                        if (current < minv[j]) {
+                            minv[j] = current;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] result = new int[n];
+        Arrays.fill(result, -1);
+        for (int j = 1; j <= m; j++) {
+            // Matches that had to use a forbidden pair are not real assignments
+            if (p[j] != 0 && entry(cost, p[j] - 1, j - 1, transposed) < FORBIDDEN) {
+                result[p[j] - 1] = j - 1;
+            }
+        }
+        return result;
+    }
+
+    private static double entry(double[][] cost, int i, int j, boolean transposed) {
+        double value = transposed ? cost[j][i] : cost[i][j];
+        return value == NO_BID ? FORBIDDEN : value;
+    }
+}
@@ -0,0 +1,69 @@
+package warehouse;
+
+/**
+ * ConsumptionForecast - Per-item demand rate and delivery lead time of one station
+ *
+ * Both are exponentially weighted moving averages, so the forecast follows
+ * changes in production pace and warehouse load within a few observations.
+ * Demand is recorded as what production asked for, not what it got, so a
+ * stockout does not make an item look less needed. Until the first
+ * observation, the rates and lead time start from the given priors.
+ *
+ * Not thread-safe: only used from the owning station's behaviour thread
+ * (or the simulation's event loop).
+ */
+public class ConsumptionForecast {
+
+    private static final double RATE_WEIGHT = 0.2;
+    private static final double LEAD_TIME_WEIGHT = 0.3;
+
+    private final double[] ratePerMs;
+    private final long[] lastDemandAt;
+    private double leadTimeMs;
+
+    /**
+     * @param initialRatePerMs prior demand per item type (units per millisecond)
+     * @param initialLeadTimeMs prior time from request to confirmed delivery
+     */
+    public ConsumptionForecast(double[] initialRatePerMs, long initialLeadTimeMs) {
+        this.ratePerMs = initialRatePerMs.clone();
+        this.lastDemandAt = new long[initialRatePerMs.length];
+        this.leadTimeMs = initialLeadTimeMs;
+    }
+
+    /**
+     * Record that production asked for the given units of an item at time now.
+     * The first call per item only starts the clock.
+     */
+    public void recordDemand(int item, int units, long now) {
+        long since = lastDemandAt[item];
+        lastDemandAt[item] = now;
+        if (since == 0 || now <= since) {
+            return;
+        }
+        double observed = (double) units / (now - since);
+        ratePerMs[item] += RATE_WEIGHT * (observed - ratePerMs[item]);
+    }
+
+    public void recordLeadTime(long ms) {
+        leadTimeMs += LEAD_TIME_WEIGHT * (ms - leadTimeMs);
+    }
+
+    public double ratePerMs(int item) {
+        return ratePerMs[item];
+    }
+
+    public long leadTimeMs() {
+        return (long) leadTimeMs;
+    }
+
+    /**
+     * Time until the given stock of an item is used up at the current rate
+     */
+    public long msUntilStockout(int item, int stock) {
+        if (ratePerMs[item] <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (Math.max(0, stock) / ratePerMs[item]);
+    }
+}
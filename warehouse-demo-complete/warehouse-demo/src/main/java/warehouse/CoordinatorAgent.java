@@ -0,0 +1,1124 @@
+package warehouse;
+
+import jade.core.Agent;
+import jade.core.AID;
+import jade.core.behaviours.*;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.SubscriptionInitiator;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.*;
+import jade.domain.FIPAException;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static warehouse.EventLog.Level.*;
+
+/**
+ * CoordinatorAgent - Implements contract net protocol for task allocation
+ * in the BeaverWoodHome warehouse automation system.
+ * 
+ * Responsibilities:
+ * - Receive transport requests from ProductionStationAgents
+ * - Keep the transport fleet membership in sync through a DF subscription
+ * - Track robot positions and availability from their status updates
+ * - Queue tasks by urgency (with aging) and auction them as robots are free
+ * - Send call-for-proposals to the k nearest available TransportAgents
+ * - Collect bids until the bid deadline (or until every robot has answered)
+ * - Assign each task to the lowest-cost bid (GREEDY), or collect closed
+ *   auctions over a short window and solve them as one min-cost
+ *   assignment (BATCH)
+ * - Withdraw a task whose station cancels the order, asking its assignee
+ *   to drop it if it has not been picked up yet
+ * - Track task completion reported by robots, keeping a bounded history,
+ *   and relay the outcome to the requesting station
+ * - While no task is waiting, re-auction assigned tasks that have not been
+ *   picked up among the free robots and move a task whose assignee agrees
+ *   to release it to a much cheaper bidder
+ * - With several coordinators, own one zone of the grid, exchange load
+ *   reports with the other zones and hand idle robots to busier ones
+ * - Grant the zone's charging docks: robots with a low battery whenever a
+ *   dock is free, idle robots only while nothing is queued and enough of
+ *   the fleet stays available
+ * - Publish allocation latencies, bid counts and fleet state as metrics (JMX)
+ * - Journal task state changes (if warehouse.journal.dir is set) and take
+ *   back the open tasks and task counter after a restart
+ *
+ * Optional arguments: bidDeadlineMs, noBidPolicy (RETRY or FAIL), cfpFanout,
+ * allocationMode (GREEDY or BATCH), zone, zones
+ */
+public class CoordinatorAgent extends Agent {
+    
+    /**
+     * What to do with a task when a bidding round closes without any proposal
+     */
+    enum NoBidPolicy { RETRY, FAIL }
+    
+    /**
+     * How closed auctions are turned into assignments
+     */
+    enum AllocationMode { GREEDY, BATCH }
+    
+    private Set<AID> transportAgents = ConcurrentHashMap.newKeySet();
+    private static final long RECONCILE_INTERVAL_MS = 60000;
+    private static final String SUBSCRIPTION_CONVERSATION = "transport-agents"; // DF notifications
+    private Map<String, TaskRequest> activeTasks = new HashMap<>(); // Bidding or assigned
+    private int taskCounter = 0;
+    private TaskJournal journal; // Null unless warehouse.journal.dir is set
+    static final long CHECKPOINT_INTERVAL_MS = 1000;
+    static final long RECOVERY_QUERY_TIMEOUT_MS = 10000; // A recovered task's robot must confirm it by then
+    
+    // Finished tasks are kept only as compact records, bounded by size and age
+    private static final int FINISHED_LOG_CAPACITY = 10000;
+    private static final long FINISHED_RETENTION_MS = 10 * 60 * 1000;
+    private static final long STATS_INTERVAL_MS = 60000;
+    private FinishedTaskLog finishedTasks = new FinishedTaskLog(FINISHED_LOG_CAPACITY, FINISHED_RETENTION_MS);
+    
+    // Contract net settings
+    private static final long DEFAULT_BID_DEADLINE_MS = 2000;
+    static final long RETRY_BASE_DELAY_MS = 1000;
+    static final long RETRY_MAX_DELAY_MS = 16000;
+    static final int MAX_CFP_ROUNDS = 5;
+    private long bidDeadline = DEFAULT_BID_DEADLINE_MS;
+    private NoBidPolicy noBidPolicy = NoBidPolicy.RETRY;
+    
+    // Tasks waiting for an auction, highest urgency first; one point of aging per second
+    static final long AGING_MS_PER_POINT = 1000;
+    static final long DISPATCH_INTERVAL_MS = 1000;
+    private TaskAllocator<TaskRequest> allocator; // Queue, auctions and awards (see TaskAllocator)
+    
+    // Batch allocation: auctions closed within one window are assigned together
+    static final long BATCH_WINDOW_MS = 500;
+    private AllocationMode allocationMode = AllocationMode.GREEDY;
+    
+    // Spatial index of robot positions, fed by robot status updates
+    static final int INDEX_CELL_SIZE = 4;
+    static final int DEFAULT_CFP_FANOUT = 3;
+    private RobotIndex robotIndex = new RobotIndex(PathPlanner.shared().getMap().width(), INDEX_CELL_SIZE);
+    private int cfpFanout = DEFAULT_CFP_FANOUT;
+    
+    // Zone sharding: this coordinator owns strip `zone` of `zones` (see ZoneDirectory)
+    static final long LOAD_INTERVAL_MS = 2000;
+    private int zone = 0;
+    private int zones = 1;
+    
+    // Charging docks in this zone (grid cells) and the robot at each, null if free
+    static final int CHARGING_AVAILABILITY_TARGET_PERCENT = 70;
+    private int[] docks;
+    private AID[] dockHolders;
+    
+    // Re-auction of assigned tasks that have not been picked up yet
+    static final long REAUCTION_INTERVAL_MS = 1000;
+    static final double REASSIGN_MIN_GAIN = 16; // Bid cost a transfer must save (8 cells of travel)
+    static final int MAX_REAUCTIONS = 3;        // Rounds per task
+    static final long LOST_TASK_GRACE_MS = 3000; // Wait for a report after an assignee says it lacks the task
+    private Map<String, TaskRequest> releases = new HashMap<>(); // Open release requests by reply-with
+    
+    // Metrics (see MetricsRegistry); references are kept so recording is lock-free
+    private MetricsRegistry metrics;
+    private AtomicLong requestsReceived;
+    private AtomicLong cfpsSent;
+    private AtomicLong bidsReceived;
+    private AtomicLong refusalsReceived;
+    private AtomicLong tasksAssigned;
+    private AtomicLong tasksCompleted;
+    private AtomicLong tasksFailed;
+    private Histogram requestToCfp;
+    private Histogram cfpToFirstBid;
+    private Histogram cfpToAssignment;
+    private Histogram assignmentToCompletion;
+    private Histogram bidsPerTask;
+    private Histogram refusalsPerTask;
+    private AtomicLong chargesGranted;
+    private AtomicLong chargesDeferred;
+    private AtomicLong tasksReassigned;
+    private AtomicLong releasesRefused;
+    private AtomicLong tasksLost;
+    private AtomicLong tasksCancelled;
+    
+    protected void setup() {
+        Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            bidDeadline = Long.parseLong(args[0].toString());
+        }
+        if (args != null && args.length > 1) {
+            noBidPolicy = NoBidPolicy.valueOf(args[1].toString().toUpperCase());
+        }
+        if (args != null && args.length > 2) {
+            cfpFanout = Integer.parseInt(args[2].toString());
+        }
+        if (args != null && args.length > 3) {
+            allocationMode = AllocationMode.valueOf(args[3].toString().toUpperCase());
+        }
+        if (args != null && args.length > 5) {
+            zone = Integer.parseInt(args[4].toString());
+            zones = Integer.parseInt(args[5].toString());
+        }
+        
+        if (EventLog.enabled(INFO)) {
+            EventLog.log(INFO, getLocalName(), "READY", "CoordinatorAgent",
+                         "bidDeadlineMs=" + bidDeadline + " noBidPolicy=" + noBidPolicy + " cfpFanout=" + cfpFanout +
+                         " allocation=" + allocationMode + " zones=" + zones, zone);
+        }
+        
+        // Register with Directory Facilitator
+        registerService();
+        
+        registerMetrics();
+        initDocks();
+        // Robots that have not reported yet are only polled without zones; with
+        // zones they may belong to another coordinator
+        allocator = new TaskAllocator<>(robotIndex, new AllocationHost(), allocationMode, noBidPolicy, cfpFanout,
+                zones == 1 ? transportAgents : Collections.<AID>emptySet());
+        openJournal();
+        
+        // One behavior reads the mailbox and routes each message to its handler:
+        // dock requests, task outcomes, robot status, zone load and handoffs,
+        // release answers, bids and transport requests. DF notifications are left for the subscription.
+        addBehaviour(new MessageDispatcher(this, metrics)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchConversationId(TaskCodec.CHARGE_CONVERSATION),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchPerformative(ACLMessage.REQUEST),
+                                MessageTemplate.MatchPerformative(ACLMessage.INFORM))), this::handleCharge)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchOntology(TaskCodec.LIFECYCLE_ONTOLOGY),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                                MessageTemplate.MatchPerformative(ACLMessage.FAILURE))), this::handleLifecycle)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchOntology(TaskCodec.LIFECYCLE_ONTOLOGY),
+                        MessageTemplate.MatchPerformative(ACLMessage.CANCEL)), this::handleCancel)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                        MessageTemplate.MatchConversationId(TaskCodec.STATUS_CONVERSATION)), this::handleStatus)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchConversationId(TaskCodec.LOAD_CONVERSATION),
+                                MessageTemplate.MatchConversationId(TaskCodec.HANDOFF_CONVERSATION))), this::handleZone)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchConversationId(TaskCodec.RELEASE_CONVERSATION),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchPerformative(ACLMessage.AGREE),
+                                MessageTemplate.MatchPerformative(ACLMessage.REFUSE))), this::handleRelease)
+                .route(MessageTemplate.or(
+                        MessageTemplate.MatchPerformative(ACLMessage.PROPOSE),
+                        MessageTemplate.MatchPerformative(ACLMessage.REFUSE)), this::handleProposal)
+                .route(MessageTemplate.MatchPerformative(ACLMessage.REQUEST), this::handleRequest)
+                .leave(MessageTemplate.MatchConversationId(SUBSCRIPTION_CONVERSATION)));
+        
+        // Periodic behavior to re-auction queued tasks whose retry backoff has expired
+        addBehaviour(new TickerBehaviour(this, DISPATCH_INTERVAL_MS) {
+            protected void onTick() {
+                dispatchTasks();
+            }
+        });
+        
+        // Periodic behavior to re-auction assigned tasks while robots are idle
+        addBehaviour(new TickerBehaviour(this, REAUCTION_INTERVAL_MS) {
+            protected void onTick() {
+                allocator.reauction(activeTasks.values(), System.currentTimeMillis());
+            }
+        });
+        
+        // Periodic behavior to evict old task records and print latency statistics
+        addBehaviour(new TickerBehaviour(this, STATS_INTERVAL_MS) {
+            protected void onTick() {
+                finishedTasks.evictExpired(System.currentTimeMillis());
+                if (!EventLog.enabled(INFO)) {
+                    return; // The summaries sort the latency windows; skip them when nobody reads them
+                }
+                EventLog.log(INFO, getLocalName(), "STATS", null, activeTasks.size() + " open, " +
+                             finishedTasks.totalCompleted() + " completed, " +
+                             finishedTasks.totalFailed() + " failed; allocation " +
+                             FinishedTaskLog.summarize(finishedTasks.allocationLatencies()) +
+                             "; completion " +
+                             FinishedTaskLog.summarize(finishedTasks.completionLatencies()));
+            }
+        });
+        
+        // Periodic behavior to sample queue, mailbox and fleet gauges
+        addBehaviour(new TickerBehaviour(this, MetricsRegistry.SAMPLE_INTERVAL_MS) {
+            protected void onTick() {
+                sampleMetrics();
+            }
+        });
+        
+        // Get notified by the DF whenever transport agents register or deregister
+        ACLMessage subscription = DFService.createSubscriptionMessage(
+                this, getDefaultDF(), transportAgentTemplate(), null);
+        subscription.setConversationId(SUBSCRIPTION_CONVERSATION);
+        addBehaviour(new TransportSubscriptionBehaviour(subscription));
+        
+        // Slow full re-discovery as a safety net for missed notifications
+        addBehaviour(new TickerBehaviour(this, RECONCILE_INTERVAL_MS) {
+            protected void onTick() {
+                reconcileTransportAgents();
+            }
+        });
+        
+        // Periodic behavior to flush the journal to disk and compact it once it has grown
+        if (journal != null) {
+            addBehaviour(new TickerBehaviour(this, CHECKPOINT_INTERVAL_MS) {
+                protected void onTick() {
+                    journal.checkpoint();
+                }
+            });
+        }
+        
+        // Periodic behavior to tell the other zones how loaded this one is
+        if (zones > 1) {
+            addBehaviour(new TickerBehaviour(this, LOAD_INTERVAL_MS) {
+                protected void onTick() {
+                    broadcastLoad();
+                }
+            });
+        }
+    }
+    
+    private void registerService() {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(ZoneDirectory.SERVICE_TYPE);
+        sd.setName("warehouse-coordinator");
+        sd.addProperties(new Property(ZoneDirectory.ZONE_PROPERTY, Integer.toString(zone)));
+        sd.addProperties(new Property(ZoneDirectory.ZONES_PROPERTY, Integer.toString(zones)));
+        dfd.addServices(sd);
+        try {
+            DFService.register(this, dfd);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void registerMetrics() {
+        metrics = MetricsRegistry.register("CoordinatorAgent", getLocalName());
+        requestsReceived = metrics.counter("requestsReceived");
+        cfpsSent = metrics.counter("cfpsSent");
+        bidsReceived = metrics.counter("bidsReceived");
+        refusalsReceived = metrics.counter("refusalsReceived");
+        tasksAssigned = metrics.counter("tasksAssigned");
+        tasksCompleted = metrics.counter("tasksCompleted");
+        tasksFailed = metrics.counter("tasksFailed");
+        requestToCfp = metrics.histogram("requestToCfpMs");
+        cfpToFirstBid = metrics.histogram("cfpToFirstBidMs");
+        cfpToAssignment = metrics.histogram("cfpToAssignmentMs");
+        assignmentToCompletion = metrics.histogram("assignmentToCompletionMs");
+        bidsPerTask = metrics.histogram("bidsPerTask");
+        refusalsPerTask = metrics.histogram("refusalsPerTask");
+        chargesGranted = metrics.counter("chargesGranted");
+        chargesDeferred = metrics.counter("chargesDeferred");
+        tasksReassigned = metrics.counter("tasksReassigned");
+        releasesRefused = metrics.counter("releasesRefused");
+        tasksLost = metrics.counter("tasksLost");
+        tasksCancelled = metrics.counter("tasksCancelled");
+    }
+    
+    /**
+     * Open this coordinator's journal and take back the tasks that were open
+     * when it stopped: assigned ones are checked with their robot (see
+     * queryAssignee), the rest are queued for auction again. Task numbers
+     * continue after the last one.
+     */
+    private void openJournal() {
+        String dir = System.getProperty("warehouse.journal.dir");
+        if (dir == null) {
+            return;
+        }
+        try {
+            journal = TaskJournal.open(new File(dir), getLocalName());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        taskCounter = journal.counter();
+        int queued = 0;
+        for (TaskJournal.Entry entry : journal.openTasks()) {
+            TaskRequest task = new TaskRequest(TaskCodec.decodeTask(entry.task),
+                    new AID(entry.requester, AID.ISGUID), entry.conversation);
+            task.createdAt = entry.createdAt;
+            if (entry.assignee != null) {
+                task.assigned = true;
+                task.assignee = new AID(entry.assignee, AID.ISGUID);
+                task.assignedAt = entry.assignedAt;
+                queryAssignee(task);
+            } else {
+                allocator.enqueue(task);
+                queued++;
+            }
+            activeTasks.put(task.taskId, task);
+        }
+        if (EventLog.enabled(INFO)) {
+            EventLog.log(INFO, getLocalName(), "RECOVERED", null,
+                         journal.recordsRecovered() + " records, " + activeTasks.size() + " open tasks, counter " +
+                         taskCounter, queued, journal.recoveryMs(), Double.NaN);
+        }
+    }
+    
+    private void initDocks() {
+        WarehouseMap map = PathPlanner.shared().getMap();
+        docks = zoneDocks(map, zone, zones);
+        dockHolders = new AID[docks.length];
+        for (int cell : docks) {
+            // Every robot of the zone plans to these cells; build their distance fields now
+            PathPlanner.shared().precompute(map.cellX(cell), map.cellY(cell));
+        }
+    }
+    
+    /**
+     * The dock cells inside a zone; a zone without docks shares all of them
+     */
+    static int[] zoneDocks(WarehouseMap map, int zone, int zones) {
+        List<Integer> own = new ArrayList<>();
+        for (int i = 0; i < map.chargerCount(); i++) {
+            if (ZoneDirectory.zoneOf(map.cellX(map.chargerCell(i)), map.width(), zones) == zone) {
+                own.add(map.chargerCell(i));
+            }
+        }
+        if (own.isEmpty()) {
+            for (int i = 0; i < map.chargerCount(); i++) {
+                own.add(map.chargerCell(i));
+            }
+        }
+        int[] cells = new int[own.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = own.get(i);
+        }
+        return cells;
+    }
+    
+    /**
+     * Copy queue, mailbox and fleet state into gauges (runs on the agent thread)
+     */
+    private void sampleMetrics() {
+        // Distinct robots, since a robot may hold a queued follow-up task as well
+        Set<AID> busy = new HashSet<>();
+        for (TaskRequest task : activeTasks.values()) {
+            if (task.assigned) {
+                busy.add(task.assignee);
+            }
+        }
+        int assigned = busy.size();
+        int fleet = robotIndex.size();
+        int[] battery = robotIndex.batteryBands(4);
+        metrics.gauge("queuedTasks").set(allocator.queued());
+        metrics.gauge("openTasks").set(activeTasks.size());
+        metrics.gauge("mailboxDepth").set(getCurQueueSize());
+        metrics.gauge("journalBytes").set(journal != null ? journal.size() : 0);
+        metrics.gauge("fleetSize").set(fleet);
+        metrics.gauge("robotsAvailable").set(robotIndex.availableCount());
+        metrics.gauge("robotsCharging").set(docksTaken(dockHolders));
+        metrics.gauge("fleetUtilizationPercent").set(fleet == 0 ? 0 : 100L * assigned / fleet);
+        metrics.gauge("robotsBattery0to24").set(battery[0]);
+        metrics.gauge("robotsBattery25to49").set(battery[1]);
+        metrics.gauge("robotsBattery50to74").set(battery[2]);
+        metrics.gauge("robotsBattery75to100").set(battery[3]);
+    }
+    
+    private DFAgentDescription transportAgentTemplate() {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("transport-service");
+        template.addServices(sd);
+        return template;
+    }
+    
+    /**
+     * Behavior to apply DF register/deregister notifications to the fleet membership
+     */
+    private class TransportSubscriptionBehaviour extends SubscriptionInitiator {
+        TransportSubscriptionBehaviour(ACLMessage subscription) {
+            super(CoordinatorAgent.this, subscription);
+        }
+        
+        protected void handleInform(ACLMessage inform) {
+            try {
+                DFAgentDescription[] changes = DFService.decodeNotification(inform.getContent());
+                for (DFAgentDescription change : changes) {
+                    // A description without services means the agent deregistered
+                    if (change.getAllServices().hasNext()) {
+                        addTransportAgent(change.getName());
+                    } else {
+                        removeTransportAgent(change.getName());
+                    }
+                }
+            } catch (FIPAException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    private void addTransportAgent(AID agent) {
+        if (transportAgents.add(agent)) {
+            EventLog.log(INFO, getLocalName(), "ROBOT_JOINED", agent.getLocalName(), transportAgents.size());
+        }
+    }
+    
+    private void removeTransportAgent(AID agent) {
+        if (!transportAgents.remove(agent)) {
+            return;
+        }
+        robotIndex.remove(agent);
+        releaseDock(agent);
+        EventLog.log(INFO, getLocalName(), "ROBOT_LEFT", agent.getLocalName(), transportAgents.size());
+        allocator.robotLeft(agent, activeTasks.values(), System.currentTimeMillis());
+    }
+    
+    /**
+     * Full DF search that repairs any drift between the membership set and the DF
+     */
+    private void reconcileTransportAgents() {
+        try {
+            DFAgentDescription[] result = DFService.search(this, transportAgentTemplate());
+            Set<AID> registered = new HashSet<>();
+            for (DFAgentDescription agent : result) {
+                registered.add(agent.getName());
+                addTransportAgent(agent.getName());
+            }
+            for (AID agent : new ArrayList<>(transportAgents)) {
+                if (!registered.contains(agent)) {
+                    removeTransportAgent(agent);
+                }
+            }
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Send this zone's queue length and idle robot count to every other coordinator
+     */
+    private void broadcastLoad() {
+        try {
+            ZoneDirectory directory = ZoneDirectory.search(this);
+            List<AID> peers = directory == null ? Collections.<AID>emptyList() : directory.peersOf(getAID());
+            if (peers.isEmpty()) {
+                return;
+            }
+            ACLMessage load = new ACLMessage(ACLMessage.INFORM);
+            for (AID peer : peers) {
+                load.addReceiver(peer);
+            }
+            load.setConversationId(TaskCodec.LOAD_CONVERSATION);
+            load.setByteSequenceContent(TaskCodec.encodeLoad(zone, allocator.queued(), allocator.idleRobots()));
+            send(load);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Zone coordination: a zone with queued tasks and no idle robots
+     * gets idle robots from this zone (if this one has nothing queued), and robots
+     * that moved to another zone are dropped from the index
+     */
+    private boolean handleZone(ACLMessage msg) {
+        if (TaskCodec.HANDOFF_CONVERSATION.equals(msg.getConversationId())) {
+            robotIndex.remove(msg.getSender());
+            EventLog.log(INFO, getLocalName(), "ZONE_LEFT", msg.getSender().getLocalName(), zone);
+            return true;
+        }
+        byte[] load = TaskCodec.loadPayload(msg);
+        int count = load == null ? 0 : allocator.handOffCount(TaskCodec.loadQueued(load), TaskCodec.loadIdle(load));
+        if (count > 0) {
+            handOffRobots(msg.getSender(), TaskCodec.loadZone(load), count);
+        }
+        return true;
+    }
+    
+    /**
+     * Move idle robots closest to another zone over to that zone's coordinator
+     */
+    private void handOffRobots(AID peer, int peerZone, int count) {
+        WarehouseMap map = PathPlanner.shared().getMap();
+        int centerX = (ZoneDirectory.zoneStart(peerZone, map.width(), zones) +
+                       ZoneDirectory.zoneStart(peerZone + 1, map.width(), zones)) / 2;
+        List<AID> robots = allocator.idleNear(centerX, map.height() / 2, count);
+        for (AID robot : robots) {
+            ACLMessage handoff = new ACLMessage(ACLMessage.REQUEST);
+            handoff.addReceiver(robot);
+            handoff.setConversationId(TaskCodec.HANDOFF_CONVERSATION);
+            handoff.setContent(peer.getName());
+            send(handoff);
+            robotIndex.remove(robot);
+        }
+        if (!robots.isEmpty()) {
+            EventLog.log(INFO, getLocalName(), "HANDOFF", peer.getLocalName(), robots.size(), peerZone);
+        }
+    }
+    
+    /**
+     * Schedule charging: a request is granted the free dock closest
+     * to the robot if mayCharge allows it, otherwise deferred (the robot asks
+     * again later); an INFORM frees the sender's dock
+     */
+    private boolean handleCharge(ACLMessage msg) {
+        AID robot = msg.getSender();
+        if (msg.getPerformative() == ACLMessage.INFORM) {
+            releaseDock(robot);
+            return true;
+        }
+        byte[] request = TaskCodec.statusPayload(msg);
+        if (request == null) {
+            return false;
+        }
+        boolean urgent = TaskCodec.chargeUrgent(request);
+        releaseDock(robot); // A robot asking again has left its old dock
+        int dock = grantDock(PathPlanner.shared().getMap(), docks, dockHolders, TaskCodec.statusX(request),
+                             TaskCodec.statusY(request), urgent, robotIndex.size(), allocator.queued());
+        ACLMessage reply = msg.createReply();
+        if (dock < 0) {
+            chargesDeferred.incrementAndGet();
+            reply.setPerformative(ACLMessage.REFUSE);
+            send(reply);
+            EventLog.log(DEBUG, getLocalName(), "CHARGE_DEFERRED", robot.getLocalName(),
+                         TaskCodec.statusBattery(request));
+            return true;
+        }
+        dockHolders[dock] = robot;
+        robotIndex.markUnavailable(robot);
+        chargesGranted.incrementAndGet();
+        WarehouseMap map = PathPlanner.shared().getMap();
+        reply.setPerformative(ACLMessage.AGREE);
+        reply.setByteSequenceContent(TaskCodec.encodeCharger(map.cellX(docks[dock]), map.cellY(docks[dock])));
+        send(reply);
+        EventLog.log(INFO, getLocalName(), "CHARGE_GRANTED", robot.getLocalName(),
+                     urgent ? "URGENT" : "IDLE", TaskCodec.statusBattery(request));
+        return true;
+    }
+    
+    /**
+     * Whether a robot may go charging now. A low battery always may (it cannot
+     * take tasks anyway); an idle robot only when nothing is waiting and the
+     * robots left working stay at or above the availability target.
+     */
+    static boolean mayCharge(boolean urgent, int fleet, int charging, int queuedTasks) {
+        if (urgent) {
+            return true;
+        }
+        return queuedTasks == 0 && (fleet - charging - 1) * 100 >= CHARGING_AVAILABILITY_TARGET_PERCENT * fleet;
+    }
+    
+    /**
+     * The dock to grant a robot at (x, y): the nearest free one if mayCharge
+     * allows it, otherwise -1. holders has the robot at each dock, null if free.
+     */
+    static int grantDock(WarehouseMap map, int[] docks, Object[] holders, int x, int y, boolean urgent,
+                         int fleet, int queuedTasks) {
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < docks.length; i++) {
+            if (holders[i] != null) {
+                continue;
+            }
+            int distance = Math.abs(map.cellX(docks[i]) - x) + Math.abs(map.cellY(docks[i]) - y);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        if (best < 0 || !mayCharge(urgent, fleet, docksTaken(holders), queuedTasks)) {
+            return -1;
+        }
+        return best;
+    }
+    
+    private void releaseDock(AID robot) {
+        for (int i = 0; i < dockHolders.length; i++) {
+            if (robot.equals(dockHolders[i])) {
+                dockHolders[i] = null;
+            }
+        }
+    }
+    
+    static int docksTaken(Object[] holders) {
+        int charging = 0;
+        for (Object holder : holders) {
+            if (holder != null) {
+                charging++;
+            }
+        }
+        return charging;
+    }
+    
+    /**
+     * Queue a transport request from a production station
+     */
+    private boolean handleRequest(ACLMessage msg) {
+        byte[] payload = TaskCodec.taskPayload(msg);
+        if (payload == null) {
+            EventLog.log(WARN, getLocalName(), "MALFORMED_REQUEST", msg.getSender().getLocalName());
+            return false;
+        }
+        
+        // Interleave task numbers across zones so task IDs stay unique fleet-wide
+        TransportTask request = TaskCodec.decodeTask(payload).withNumber(++taskCounter * zones + zone);
+        requestsReceived.incrementAndGet();
+        
+        TaskRequest task = new TaskRequest(request, msg.getSender(), msg.getConversationId());
+        activeTasks.put(task.taskId, task);
+        if (journal != null) {
+            journal.created(request.taskNumber, taskCounter, task.createdAt, msg.getSender().getName(),
+                            msg.getConversationId(), task.payload);
+        }
+        EventLog.log(INFO, getLocalName(), "REQUEST", task.taskId, msg.getSender().getLocalName(),
+                     request.urgency);
+        TraceRecorder.record(TraceRecorder.REQUEST, task.taskId, getLocalName(),
+                msg.getSender().getLocalName(), request.urgency, TraceRecorder.requestDetail(request));
+        
+        // Queue by urgency and auction right away if robots are free
+        allocator.submit(task, task.createdAt);
+        if (task.round == 0) {
+            EventLog.log(INFO, getLocalName(), "QUEUED", task.taskId, allocator.queued());
+        }
+        return true;
+    }
+    
+    /**
+     * Record a robot position and availability update
+     */
+    private boolean handleStatus(ACLMessage msg) {
+        byte[] status = TaskCodec.statusPayload(msg);
+        if (status == null) {
+            return false;
+        }
+        RobotIndex.RobotStatus previous = robotIndex.get(msg.getSender());
+        boolean wasAvailable = previous != null && previous.available;
+        boolean available = TaskCodec.statusAvailable(status);
+        robotIndex.update(msg.getSender(), TaskCodec.statusX(status), TaskCodec.statusY(status),
+                          TaskCodec.statusBattery(status), available);
+        
+        // A robot just became free: re-auction waiting tasks without waiting for backoff,
+        // or, with nothing waiting, tasks it might reach sooner than their assignee
+        if (available && !wasAvailable) {
+            allocator.robotFreed(activeTasks.values(), System.currentTimeMillis());
+        }
+        return true;
+    }
+    
+    /**
+     * Start auctions for queued tasks while robots are free (see TaskAllocator.dispatch)
+     */
+    private void dispatchTasks() {
+        allocator.dispatch(System.currentTimeMillis());
+    }
+    
+    /**
+     * Collect a proposal or refusal for an open bidding round; answers to
+     * closed rounds (late bids, tasks already assigned) are stale
+     */
+    private boolean handleProposal(ACLMessage msg) {
+        String conversationId = msg.getConversationId();
+        TaskRequest task = activeTasks.get(conversationId);
+        
+        if (task == null || !task.biddingOpen || !task.replyWith.equals(msg.getInReplyTo()) ||
+                !task.polled.contains(msg.getSender())) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        byte[] bid = TaskCodec.proposalPayload(msg);
+        if (msg.getPerformative() == ACLMessage.PROPOSE && bid != null) {
+            double cost = TaskCodec.proposalCost(bid);
+            
+            if (task.proposals.isEmpty()) {
+                cfpToFirstBid.record(now - task.cfpSentAt);
+            }
+            bidsReceived.incrementAndGet();
+            EventLog.log(DEBUG, getLocalName(), "PROPOSAL", task.taskId, msg.getSender().getLocalName(),
+                         EventLog.NONE, EventLog.NONE, cost);
+            TraceRecorder.record(TraceRecorder.PROPOSE, task.taskId, getLocalName(),
+                    msg.getSender().getLocalName(), cost, null);
+            // Closes the round early once every polled robot has answered
+            return allocator.propose(task, msg.getSender(), cost, now);
+        }
+        if (msg.getPerformative() == ACLMessage.REFUSE) {
+            refusalsReceived.incrementAndGet();
+        }
+        return allocator.refuse(task, msg.getSender(), now);
+    }
+    
+    /**
+     * Ask the assignee to give the task up if it would now bid more than bar
+     */
+    private void requestRelease(TaskRequest task, String replyWith, double bar) {
+        task.releaseReplyWith = replyWith;
+        releases.put(replyWith, task);
+        ACLMessage release = new ACLMessage(ACLMessage.REQUEST);
+        release.addReceiver(task.assignee);
+        release.setConversationId(TaskCodec.RELEASE_CONVERSATION);
+        release.setReplyWith(replyWith);
+        release.setByteSequenceContent(TaskCodec.encodeProposal(task.task.taskNumber, bar));
+        send(release);
+    }
+    
+    /**
+     * Check a task recovered from the journal with its assignee, whose report
+     * may have gone to this coordinator before it restarted: a release
+     * request no bid can beat is always refused, with the reason telling
+     * whether the robot still holds the task. A robot that does not (UNKNOWN,
+     * see awaitLostTask) or does not answer at all loses the task to a new
+     * auction.
+     */
+    private void queryAssignee(TaskRequest task) {
+        String replyWith = task.taskId + "-recovered";
+        requestRelease(task, replyWith, Double.MAX_VALUE);
+        addBehaviour(new WakerBehaviour(this, RECOVERY_QUERY_TIMEOUT_MS) {
+            protected void onWake() {
+                if (!replyWith.equals(task.releaseReplyWith)) {
+                    return; // Answered
+                }
+                releases.remove(replyWith);
+                task.releaseReplyWith = null;
+                if (activeTasks.get(task.taskId) == task && task.assigned) {
+                    EventLog.log(WARN, getLocalName(), "TASK_LOST", task.taskId, task.assignee.getLocalName());
+                    tasksLost.incrementAndGet();
+                    allocator.requeue(task, System.currentTimeMillis());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Act on the assignee's answer to a release request: on AGREE it has
+     * dropped the task, which goes to the challenger (or back to the queue if
+     * the challenger is no longer free, or is withdrawn if the station
+     * cancelled it); on REFUSE it keeps the task, unless it does not hold the
+     * task at all. Answers for tasks closed in the meantime are stale.
+     */
+    private boolean handleRelease(ACLMessage msg) {
+        TaskRequest task = releases.remove(msg.getInReplyTo());
+        if (task == null) {
+            return false;
+        }
+        task.releaseReplyWith = null;
+        long now = System.currentTimeMillis();
+        if (!activeTasks.containsKey(task.taskId) || !msg.getSender().equals(task.assignee)) {
+            allocator.endChallenge(task);
+            dispatchTasks();
+            return false;
+        }
+        if (msg.getPerformative() == ACLMessage.REFUSE) {
+            releasesRefused.incrementAndGet();
+            EventLog.log(DEBUG, getLocalName(), "RELEASE_REFUSED", task.taskId, msg.getContent());
+            allocator.kept(task, TaskCodec.RELEASE_LOADED.equals(msg.getContent()), now);
+            if (TaskCodec.RELEASE_UNKNOWN.equals(msg.getContent())) {
+                awaitLostTask(task);
+            } else if (task.cancelRequested) {
+                // Too late to cancel: the station keeps waiting for the delivery
+                task.cancelRequested = false;
+                notifyRequester(task, ACLMessage.REFUSE, task.taskId + ":" + msg.getContent());
+            }
+            return true;
+        }
+        
+        if (task.cancelRequested) {
+            cancelTask(task);
+            dispatchTasks();
+            return true;
+        }
+        tasksReassigned.incrementAndGet();
+        AID challenger = allocator.released(task, now);
+        if (challenger != null) {
+            if (EventLog.enabled(INFO)) {
+                EventLog.log(INFO, getLocalName(), "REASSIGNED", task.taskId,
+                             msg.getSender().getLocalName() + "->" + challenger.getLocalName());
+            }
+        } else {
+            EventLog.log(INFO, getLocalName(), "RELEASE_REQUEUED", task.taskId, msg.getSender().getLocalName());
+        }
+        return true;
+    }
+    
+    /**
+     * The assignee says it does not hold the task: it may have finished it
+     * with the report still on its way (or sent to a coordinator that has
+     * since restarted), or lost it in a restart. Give the report a grace
+     * period, then queue the task for auction again (or withdraw it if the
+     * station has cancelled it).
+     */
+    private void awaitLostTask(TaskRequest task) {
+        AID assignee = task.assignee;
+        long assignedAt = task.assignedAt;
+        addBehaviour(new WakerBehaviour(this, LOST_TASK_GRACE_MS) {
+            protected void onWake() {
+                if (activeTasks.get(task.taskId) == task && task.assigned &&
+                        assignee.equals(task.assignee) && task.assignedAt == assignedAt) {
+                    EventLog.log(WARN, getLocalName(), "TASK_LOST", task.taskId, assignee.getLocalName());
+                    tasksLost.incrementAndGet();
+                    if (task.cancelRequested) {
+                        cancelTask(task);
+                        dispatchTasks();
+                    } else {
+                        allocator.requeue(task, System.currentTimeMillis());
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Withdraw a task whose station gave up waiting for it. A queued or
+     * bidding task is dropped at once; an assigned one only once its
+     * assignee agrees to release it (see handleRelease), so a robot never
+     * delivers an order the station has already written off. The station
+     * gets FAILURE when the task is withdrawn (or unknown here) and REFUSE
+     * when it is too late, e.g. the robot has loaded it.
+     */
+    private boolean handleCancel(ACLMessage msg) {
+        TaskRequest task = null;
+        for (TaskRequest candidate : activeTasks.values()) {
+            if (candidate.requester.equals(msg.getSender()) &&
+                    candidate.requestConversation.equals(msg.getConversationId())) {
+                task = candidate;
+                break;
+            }
+        }
+        if (task == null) {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.FAILURE);
+            reply.setContent("UNKNOWN");
+            send(reply);
+            return false;
+        }
+        if (!task.assigned) {
+            cancelTask(task); // Also drops it from the queue, its bidding round or the batch
+            dispatchTasks();
+        } else if (task.pickedUp) {
+            notifyRequester(task, ACLMessage.REFUSE, task.taskId + ":" + TaskCodec.RELEASE_LOADED);
+        } else if (task.releasePending()) {
+            notifyRequester(task, ACLMessage.REFUSE, task.taskId + ":BUSY"); // The station asks again later
+        } else {
+            task.cancelRequested = true;
+            requestRelease(task, task.taskId + "-cancel", -1);
+            EventLog.log(DEBUG, getLocalName(), "CANCEL_REQUESTED", task.taskId, task.assignee.getLocalName());
+        }
+        return true;
+    }
+    
+    /**
+     * Close a task the station has cancelled and confirm it with FAILURE
+     */
+    private void cancelTask(TaskRequest task) {
+        tasksCancelled.incrementAndGet();
+        finishTask(task, FinishedTaskLog.FAILED);
+        notifyRequester(task, ACLMessage.FAILURE, task.taskId + ":CANCELLED");
+        TraceRecorder.record(TraceRecorder.FAILED, task.taskId, getLocalName(), null, Double.NaN, "CANCELLED");
+        EventLog.log(INFO, getLocalName(), "CANCELLED", task.taskId, task.requester.getLocalName());
+    }
+    
+    /**
+     * Report a task's outcome to the station that requested it, on the station's conversation
+     */
+    private void notifyRequester(TaskRequest task, int performative, String content) {
+        ACLMessage outcome = new ACLMessage(performative);
+        outcome.addReceiver(task.requester);
+        outcome.setOntology(TaskCodec.LIFECYCLE_ONTOLOGY);
+        outcome.setConversationId(task.requestConversation);
+        outcome.setContent(content);
+        send(outcome);
+    }
+    
+    /**
+     * Close a task on a completion (INFORM) or failure (FAILURE) report; reports
+     * for unknown tasks or from a robot that no longer holds the task are stale
+     */
+    private boolean handleLifecycle(ACLMessage msg) {
+        TaskRequest task = activeTasks.get(msg.getConversationId());
+        // Only the current assignee can close a task
+        if (task == null || !task.assigned || !msg.getSender().equals(task.assignee)) {
+            return false;
+        }
+        if (msg.getPerformative() == ACLMessage.INFORM) {
+            finishTask(task, FinishedTaskLog.COMPLETED);
+            assignmentToCompletion.record(System.currentTimeMillis() - task.assignedAt);
+            EventLog.log(INFO, getLocalName(), "COMPLETED", task.taskId, msg.getSender().getLocalName(),
+                         System.currentTimeMillis() - task.assignedAt);
+            TraceRecorder.record(TraceRecorder.COMPLETED, task.taskId, getLocalName(),
+                    msg.getSender().getLocalName());
+            
+            // The station credits its stock on this confirmation
+            notifyRequester(task, ACLMessage.INFORM, task.taskId + ":" + msg.getSender().getLocalName());
+        } else {
+            finishTask(task, FinishedTaskLog.FAILED);
+            if (EventLog.enabled(WARN)) {
+                EventLog.log(WARN, getLocalName(), "FAILED", task.taskId,
+                             msg.getSender().getLocalName() + ":" + msg.getContent());
+            }
+            TraceRecorder.record(TraceRecorder.FAILED, task.taskId, getLocalName(),
+                    msg.getSender().getLocalName(), Double.NaN, msg.getContent());
+            notifyRequester(task, ACLMessage.FAILURE, task.taskId + ":" + msg.getContent());
+        }
+        return true;
+    }
+    
+    /**
+     * Move a task out of the open set into the finished-task log
+     */
+    private void finishTask(TaskRequest task, byte outcome) {
+        activeTasks.remove(task.taskId);
+        allocator.withdraw(task);
+        if (journal != null) {
+            journal.finished(task.task.taskNumber);
+        }
+        (outcome == FinishedTaskLog.COMPLETED ? tasksCompleted : tasksFailed).incrementAndGet();
+        bidsPerTask.record(task.bids);
+        refusalsPerTask.record(task.refusals);
+        finishedTasks.record(task.task.taskNumber, outcome, task.createdAt, task.assignedAt,
+                             System.currentTimeMillis());
+    }
+    
+    protected void takeDown() {
+        try {
+            DFService.deregister(this);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+        metrics.unregister();
+        if (journal != null) {
+            journal.close();
+        }
+        EventLog.log(INFO, getLocalName(), "TERMINATED", null);
+    }
+    
+    /**
+     * Carries the allocator's decisions out as messages, timers and journal records
+     */
+    private class AllocationHost implements TaskAllocator.Host<TaskRequest> {
+        
+        public void callForProposals(TaskRequest task, List<AID> candidates) {
+            task.replyWith = task.taskId + "-R" + task.round + "-" + task.cfpSentAt;
+            cfpsSent.incrementAndGet();
+            if (task.round == 1) {
+                requestToCfp.record(task.cfpSentAt - task.createdAt);
+            }
+            
+            ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+            for (AID agent : candidates) {
+                cfp.addReceiver(agent);
+            }
+            cfp.setByteSequenceContent(task.payload);
+            cfp.setConversationId(task.taskId);
+            cfp.setReplyWith(task.replyWith);
+            cfp.setReplyByDate(new Date(task.cfpSentAt + bidDeadline));
+            send(cfp);
+            
+            EventLog.log(DEBUG, getLocalName(), "CFP", task.taskId, candidates.size(), task.round);
+            TraceRecorder.record(TraceRecorder.CFP, task.taskId, getLocalName(), null, candidates.size(),
+                    Integer.toString(task.round));
+            
+            // Close the round at the deadline even if some robots never answer
+            final int round = task.round;
+            addBehaviour(new WakerBehaviour(CoordinatorAgent.this, bidDeadline) {
+                protected void onWake() {
+                    if (task.biddingOpen && task.round == round) {
+                        EventLog.log(DEBUG, getLocalName(), "BID_DEADLINE", task.taskId, task.round);
+                        allocator.close(task, System.currentTimeMillis());
+                    }
+                }
+            });
+        }
+        
+        public void award(TaskRequest task, AID winner) {
+            EventLog.log(DEBUG, getLocalName(), "SELECTED", task.taskId, winner.getLocalName(),
+                         task.proposals.size(), task.assignedAt - task.cfpSentAt, task.assignedCost);
+            tasksAssigned.incrementAndGet();
+            if (journal != null) {
+                journal.assigned(task.task.taskNumber, task.assignedAt, winner.getName());
+            }
+            cfpToAssignment.record(task.assignedAt - task.cfpSentAt);
+            
+            // Send ACCEPT_PROPOSAL to winner
+            ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+            accept.addReceiver(winner);
+            accept.setByteSequenceContent(task.payload);
+            accept.setConversationId(task.taskId);
+            send(accept);
+            
+            // Send REJECT_PROPOSAL to others
+            for (AID agent : task.proposals.keySet()) {
+                if (!agent.equals(winner)) {
+                    ACLMessage reject = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
+                    reject.addReceiver(agent);
+                    reject.setConversationId(task.taskId);
+                    send(reject);
+                }
+            }
+            
+            EventLog.log(INFO, getLocalName(), "ASSIGNED", task.taskId, winner.getLocalName(),
+                         task.assignedAt - task.createdAt);
+            TraceRecorder.record(TraceRecorder.ACCEPT, task.taskId, getLocalName(), winner.getLocalName());
+        }
+        
+        public void challenge(TaskRequest task, AID challenger, double bar) {
+            requestRelease(task, task.taskId + "-release-" + task.round, bar);
+            EventLog.log(DEBUG, getLocalName(), "RELEASE_REQUESTED", task.taskId, task.assignee.getLocalName(),
+                         EventLog.NONE, EventLog.NONE, bar);
+            
+            // Free the bidder if the assignee does not answer in time; a late AGREE re-queues the task
+            addBehaviour(new WakerBehaviour(CoordinatorAgent.this, bidDeadline) {
+                protected void onWake() {
+                    allocator.challengeExpired(task, challenger, System.currentTimeMillis());
+                }
+            });
+        }
+        
+        public void scheduleBatch() {
+            addBehaviour(new WakerBehaviour(CoordinatorAgent.this, BATCH_WINDOW_MS) {
+                protected void onWake() {
+                    int size = allocator.batched();
+                    int assigned = allocator.assignBatch(System.currentTimeMillis());
+                    EventLog.log(INFO, getLocalName(), "BATCH", null, null, assigned, size, Double.NaN);
+                }
+            });
+        }
+        
+        public void retry(TaskRequest task, long delayMs) {
+            EventLog.log(WARN, getLocalName(), "NO_BIDS", task.taskId, task.round);
+            EventLog.log(INFO, getLocalName(), "REQUEUED", task.taskId, delayMs);
+        }
+        
+        public void giveUp(TaskRequest task) {
+            EventLog.log(WARN, getLocalName(), "NO_BIDS", task.taskId, task.round);
+            finishTask(task, FinishedTaskLog.FAILED);
+            notifyRequester(task, ACLMessage.FAILURE, task.taskId + ":NO_BIDS");
+            TraceRecorder.record(TraceRecorder.FAILED, task.taskId, getLocalName(), null, Double.NaN, "NO_BIDS");
+            EventLog.log(WARN, getLocalName(), "GAVE_UP", task.taskId, task.round);
+        }
+        
+        public void unassigned(TaskRequest task) {
+            if (journal != null) {
+                journal.unassigned(task.task.taskNumber);
+            }
+        }
+    }
+    
+    /**
+     * Inner class to represent a transport task request
+     */
+    private class TaskRequest extends TaskAllocator.Auction {
+        String taskId;
+        byte[] payload; // Encoded once, reused for every CFP and the accept
+        AID requester;
+        String requestConversation; // The station's conversation, for the outcome report
+        String replyWith;           // Current bidding round
+        String releaseReplyWith;
+        boolean cancelRequested; // The station cancelled; waiting for the assignee to release the task
+        
+        TaskRequest(TransportTask task, AID requester, String requestConversation) {
+            super(task, System.currentTimeMillis());
+            this.taskId = task.getTaskId();
+            this.payload = TaskCodec.encodeTask(task);
+            this.requester = requester;
+            this.requestConversation = requestConversation;
+        }
+        
+        boolean releasePending() {
+            return super.releasePending() || releaseReplyWith != null || cancelRequested;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package warehouse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventLog - Asynchronous, leveled event log shared by all agents of a JVM
+ *
+ * Agents record structured events instead of printing: the call returns
+ * after a level check and a few array stores into a lock-free ring buffer,
+ * and a background thread formats and writes the records. Nothing is
+ * concatenated on the agent thread, and a disabled level costs one
+ * comparison. When the buffer is full, events are dropped (and the drop is
+ * reported) rather than blocking the agent.
+ *
+ * One tab-separated line per event, absent fields written as "-":
+ *   epochMillis  level  agent  event  subject  detail  a  b  x
+ * where subject is usually a task ID, detail a peer or reason, a and b
+ * integer values (counts, milliseconds, coordinates) and x a decimal value
+ * (bid cost). The event names are listed at the call sites.
+ *
+ * Configuration (system properties):
+ *   warehouse.log.level     DEBUG, INFO (default), WARN or ERROR
+ *   warehouse.log.file      output file; standard output if unset
+ *   warehouse.log.capacity  ring buffer size, rounded up to a power of two (default 65536)
+ */
+public final class EventLog {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    /** Marks an absent integer field */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final long IDLE_PARK_NANOS = 2000000; // Writer poll interval when the buffer is empty
+
+    private static volatile Level level = parseLevel(System.getProperty("warehouse.log.level"));
+
+    // Ring buffer: one array per field, slot = sequence & mask
+    private static final int capacity = ringCapacity(Integer.getInteger("warehouse.log.capacity", 65536));
+    private static final int mask = capacity - 1;
+    private static final AtomicLongArray published = new AtomicLongArray(capacity);
+    private static final long[] times = new long[capacity];
+    private static final Level[] levels = new Level[capacity];
+    private static final String[] agents = new String[capacity];
+    private static final String[] events = new String[capacity];
+    private static final String[] subjects = new String[capacity];
+    private static final String[] details = new String[capacity];
+    private static final long[] as = new long[capacity];
+    private static final long[] bs = new long[capacity];
+    private static final double[] xs = new double[capacity];
+
+    private static final AtomicLong head = new AtomicLong(); // Next sequence to claim
+    private static volatile long tail = 0;                    // Next sequence to write
+    private static final AtomicLong dropped = new AtomicLong();
+    private static long droppedReported = 0;
+
+    private static final Object writerLock = new Object();
+    private static final Writer fileOut = openFile(System.getProperty("warehouse.log.file"));
+    private static final StringBuilder line = new StringBuilder(128);
+
+    static {
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        Thread writer = new Thread(EventLog::writeLoop, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::drain, "event-log-flush"));
+    }
+
+    private EventLog() {
+    }
+
+    public static boolean enabled(Level candidate) {
+        return candidate.compareTo(level) >= 0;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    // ---- Recording (agent threads) ----
+
+    public static void log(Level level, String agent, String event, String subject) {
+        log(level, agent, event, subject, null, NONE, NONE, Double.NaN);
+    }
+
+    public static void log(Level level, String agent, String event, String subject, long a) {
+        log(level, agent, event, subject, null, a, NONE, Double.NaN);
+    }
+
+    public static void log(Level level, String agent, String event, String subject, long a, long b) {
+        log(level, agent, event, subject, null, a, b, Double.NaN);
+    }
+
+    public static void log(Level level, String agent, String event, String subject, String detail) {
+        log(level, agent, event, subject, detail, NONE, NONE, Double.NaN);
+    }
+
+    public static void log(Level level, String agent, String event, String subject, String detail, long a) {
+        log(level, agent, event, subject, detail, a, NONE, Double.NaN);
+    }
+
+    public static void log(Level level, String agent, String event, String subject, String detail,
+                           long a, long b, double x) {
+        if (!enabled(level)) {
+            return;
+        }
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail >= capacity) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+
+        int slot = (int) seq & mask;
+        times[slot] = System.currentTimeMillis();
+        levels[slot] = level;
+        agents[slot] = agent;
+        events[slot] = event;
+        subjects[slot] = subject;
+        details[slot] = detail;
+        as[slot] = a;
+        bs[slot] = b;
+        xs[slot] = x;
+        published.lazySet(slot, seq); // Fields above become visible to the writer with this store
+    }
+
+    // ---- Writing (background thread) ----
+
+    private static void writeLoop() {
+        while (true) {
+            if (!drain()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Write every published record; returns false if there was nothing to write
+     */
+    private static boolean drain() {
+        synchronized (writerLock) {
+            long seq = tail;
+            int slot = (int) seq & mask;
+            if (published.get(slot) != seq && dropped.get() == droppedReported) {
+                return false;
+            }
+            try {
+                Writer out = fileOut != null ? fileOut
+                        : new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                while (published.get(slot) == seq) {
+                    line.setLength(0);
+                    format(times[slot], levels[slot], agents[slot], events[slot], subjects[slot],
+                           details[slot], as[slot], bs[slot], xs[slot]);
+                    agents[slot] = subjects[slot] = details[slot] = null;
+                    out.write(line.toString());
+                    tail = ++seq;
+                    slot = (int) seq & mask;
+                }
+                long lost = dropped.get();
+                if (lost != droppedReported) {
+                    line.setLength(0);
+                    format(System.currentTimeMillis(), Level.WARN, "event-log", "DROPPED", null, null,
+                           lost - droppedReported, NONE, Double.NaN);
+                    out.write(line.toString());
+                    droppedReported = lost;
+                }
+                out.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return true;
+        }
+    }
+
+    private static void format(long time, Level level, String agent, String event, String subject,
+                               String detail, long a, long b, double x) {
+        line.append(time).append('\t').append(level).append('\t');
+        field(agent).append('\t');
+        field(event).append('\t');
+        field(subject).append('\t');
+        field(detail).append('\t');
+        if (a == NONE) {
+            line.append('-');
+        } else {
+            line.append(a);
+        }
+        line.append('\t');
+        if (b == NONE) {
+            line.append('-');
+        } else {
+            line.append(b);
+        }
+        line.append('\t');
+        if (Double.isNaN(x)) {
+            line.append('-');
+        } else {
+            line.append(x);
+        }
+        line.append('\n');
+    }
+
+    private static StringBuilder field(String value) {
+        if (value == null || value.isEmpty()) {
+            return line.append('-');
+        }
+        // Keep one record per line and the columns intact
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+        return line;
+    }
+
+    // ---- Configuration ----
+
+    private static Level parseLevel(String name) {
+        if (name == null) {
+            return Level.INFO;
+        }
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    private static int ringCapacity(int requested) {
+        int size = 1024;
+        while (size < requested && size < (1 << 24)) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static Writer openFile(String file) {
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                    StandardCharsets.UTF_8), 1 << 16);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
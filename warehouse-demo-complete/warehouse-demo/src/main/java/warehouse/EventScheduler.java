@@ -0,0 +1,76 @@
+package warehouse;
+
+import java.util.PriorityQueue;
+
+/**
+ * EventScheduler - Virtual clock and event queue for discrete-event simulation
+ *
+ * Events run in timestamp order (ties in scheduling order). The clock jumps
+ * straight to the next event, so simulated time is decoupled from wall time.
+ */
+public class EventScheduler {
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final long sequence;
+        final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+    private long processed = 0;
+
+    /**
+     * Current simulated time in milliseconds
+     */
+    public long now() {
+        return now;
+    }
+
+    public long eventsProcessed() {
+        return processed;
+    }
+
+    public void schedule(long delayMs, Runnable action) {
+        queue.add(new Event(now + Math.max(0, delayMs), sequence++, action));
+    }
+
+    /**
+     * Run an action once every period until the simulation ends
+     */
+    public void scheduleRepeating(long periodMs, Runnable action) {
+        schedule(periodMs, new Runnable() {
+            public void run() {
+                action.run();
+                schedule(periodMs, this);
+            }
+        });
+    }
+
+    /**
+     * Process events until the queue is empty or the end time is reached
+     */
+    public void runUntil(long endTime) {
+        while (!queue.isEmpty() && queue.peek().time <= endTime) {
+            Event event = queue.poll();
+            now = event.time;
+            event.action.run();
+            processed++;
+        }
+        now = endTime;
+    }
+}
@@ -0,0 +1,130 @@
+package warehouse;
+
+import java.util.Arrays;
+
+/**
+ * FinishedTaskLog - Bounded record of completed and failed tasks
+ *
+ * Once a task leaves the coordinator's open set only its task number, outcome
+ * and lifecycle timestamps are kept, in parallel primitive arrays used as a
+ * ring buffer. Records are evicted oldest-first when the buffer is full or
+ * when they are older than the retention period, so memory stays flat in a
+ * 24/7 deployment while recent latencies remain available for statistics.
+ */
+public class FinishedTaskLog {
+
+    public static final byte COMPLETED = 1;
+    public static final byte FAILED = 2;
+
+    private final long retentionMs;
+    private final int[] taskNumbers;
+    private final byte[] outcomes;
+    private final long[] createdAt;
+    private final long[] assignedAt; // 0 if the task was never assigned
+    private final long[] finishedAt;
+    private int head = 0; // Oldest record
+    private int size = 0;
+
+    // Lifetime totals, unaffected by eviction
+    private long totalCompleted = 0;
+    private long totalFailed = 0;
+
+    public FinishedTaskLog(int capacity, long retentionMs) {
+        this.retentionMs = retentionMs;
+        this.taskNumbers = new int[capacity];
+        this.outcomes = new byte[capacity];
+        this.createdAt = new long[capacity];
+        this.assignedAt = new long[capacity];
+        this.finishedAt = new long[capacity];
+    }
+
+    public void record(int taskNumber, byte outcome, long created, long assigned, long finished) {
+        if (size == taskNumbers.length) {
+            head = (head + 1) % taskNumbers.length;
+            size--;
+        }
+        int slot = (head + size) % taskNumbers.length;
+        taskNumbers[slot] = taskNumber;
+        outcomes[slot] = outcome;
+        createdAt[slot] = created;
+        assignedAt[slot] = assigned;
+        finishedAt[slot] = finished;
+        size++;
+
+        if (outcome == COMPLETED) {
+            totalCompleted++;
+        } else {
+            totalFailed++;
+        }
+        evictExpired(finished);
+    }
+
+    /**
+     * Drop records that finished more than the retention period before now
+     */
+    public void evictExpired(long now) {
+        while (size > 0 && now - finishedAt[head] > retentionMs) {
+            head = (head + 1) % taskNumbers.length;
+            size--;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long totalCompleted() {
+        return totalCompleted;
+    }
+
+    public long totalFailed() {
+        return totalFailed;
+    }
+
+    /**
+     * Request-to-assignment latencies of the retained assigned tasks
+     */
+    public long[] allocationLatencies() {
+        long[] result = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % taskNumbers.length;
+            if (assignedAt[slot] > 0) {
+                result[count++] = assignedAt[slot] - createdAt[slot];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Request-to-completion latencies of the retained completed tasks
+     */
+    public long[] completionLatencies() {
+        long[] result = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % taskNumbers.length;
+            if (outcomes[slot] == COMPLETED) {
+                result[count++] = finishedAt[slot] - createdAt[slot];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * "mean X ms, p95 Y ms" for a set of latencies, or "n/a" if there are none
+     */
+    public static String summarize(long[] latencies) {
+        if (latencies.length == 0) {
+            return "n/a";
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long latency : sorted) {
+            sum += latency;
+        }
+        int p95 = Math.max(0, (int) Math.ceil(0.95 * sorted.length) - 1);
+        return "mean " + (sum / sorted.length) + " ms, p95 " + sorted[p95] + " ms";
+    }
+}
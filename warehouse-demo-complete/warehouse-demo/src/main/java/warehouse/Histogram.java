@@ -0,0 +1,67 @@
+package warehouse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram - Lock-free distribution of non-negative values (latencies, counts)
+ *
+ * Values fall into power-of-two buckets: bucket 0 holds 0, bucket i holds
+ * [2^(i-1), 2^i). Recording is a few atomic increments, so agent threads can
+ * record on the hot path while JMX or the snapshot writer reads. Percentiles
+ * are reported as the upper bound of their bucket (within a factor of two),
+ * capped at the exact maximum.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long previous;
+        while (v > (previous = max.get()) && !max.compareAndSet(previous, v)) {
+            // Retry until the maximum is published
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public double mean() {
+        long n = count.get();
+        return n == 0 ? 0.0 : (double) sum.get() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Approximate p-th percentile (0 < p <= 1), or 0 without samples
+     */
+    public long percentile(double p) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, max.get());
+            }
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,46 @@
+package warehouse;
+
+/**
+ * ItemType - Materials that can be transported through the warehouse
+ *
+ * A transport request carries a set of item types (several materials
+ * consolidated on one trip) as a bit mask: bit i is the type with ordinal
+ * i. New types must therefore only ever be appended at the end, and there
+ * can be at most eight.
+ */
+public enum ItemType {
+    WOOD_PLANKS,
+    SCREWS,
+    HINGES,
+    VARNISH;
+
+    private static final ItemType[] VALUES = values();
+
+    public static ItemType fromCode(int code) {
+        return VALUES[code];
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public boolean in(int mask) {
+        return (mask & bit()) != 0;
+    }
+
+    /**
+     * Readable form of an item mask, e.g. "WOOD_PLANKS+SCREWS"
+     */
+    public static String describe(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (ItemType type : VALUES) {
+            if (type.in(mask)) {
+                if (sb.length() > 0) {
+                    sb.append('+');
+                }
+                sb.append(type);
+            }
+        }
+        return sb.toString();
+    }
+}
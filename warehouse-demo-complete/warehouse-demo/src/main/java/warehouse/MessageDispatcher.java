@@ -0,0 +1,104 @@
+package warehouse;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static warehouse.EventLog.Level.*;
+
+/**
+ * MessageDispatcher - The one behaviour that reads an agent's mailbox
+ *
+ * Each message is taken off the head of the queue once and handed to the
+ * first route whose template matches, in registration order. That replaces
+ * one template scan of the whole mailbox per behaviour with a few field
+ * comparisons per message. Nothing is left behind:
+ * - messages no route matches are dropped and counted as unexpected, and
+ * - a handler returns false for a message it recognised but could not use
+ *   (an answer to a closed round, an unknown task), counted as stale.
+ * The agent's queue is also capped at MAILBOX_CAPACITY (JADE then discards
+ * the oldest message), so a burst cannot grow it without bound.
+ *
+ * Messages for JADE protocol behaviours running next to the dispatcher
+ * (e.g. a DF SubscriptionInitiator) are left in the queue with leave().
+ */
+public class MessageDispatcher extends CyclicBehaviour {
+
+    static final int MAILBOX_CAPACITY = 5000;
+    private static final int BATCH_SIZE = 64; // Messages per run before other behaviours get a turn
+
+    /**
+     * Handles one routed message; returns false if the message was stale
+     */
+    public interface Handler {
+        boolean handle(ACLMessage msg);
+    }
+
+    private final List<MessageTemplate> templates = new ArrayList<>();
+    private final List<Handler> handlers = new ArrayList<>();
+    private MessageTemplate receiveTemplate; // Null: take every message
+    private final AtomicLong dispatched;
+    private final AtomicLong stale;
+    private final AtomicLong unexpected;
+
+    /**
+     * @param metrics registry for the dispatched, stale and unexpected counters, or null
+     */
+    public MessageDispatcher(Agent agent, MetricsRegistry metrics) {
+        super(agent);
+        agent.setQueueSize(MAILBOX_CAPACITY);
+        this.dispatched = metrics != null ? metrics.counter("messagesDispatched") : new AtomicLong();
+        this.stale = metrics != null ? metrics.counter("staleDropped") : new AtomicLong();
+        this.unexpected = metrics != null ? metrics.counter("unexpectedDropped") : new AtomicLong();
+    }
+
+    /**
+     * Route messages matching the template to the handler (first match wins)
+     */
+    public MessageDispatcher route(MessageTemplate template, Handler handler) {
+        templates.add(template);
+        handlers.add(handler);
+        return this;
+    }
+
+    /**
+     * Leave messages matching the template in the queue for another behaviour
+     */
+    public MessageDispatcher leave(MessageTemplate template) {
+        MessageTemplate others = MessageTemplate.not(template);
+        receiveTemplate = receiveTemplate == null ? others : MessageTemplate.and(receiveTemplate, others);
+        return this;
+    }
+
+    public void action() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ACLMessage msg = receiveTemplate == null ? myAgent.receive() : myAgent.receive(receiveTemplate);
+            if (msg == null) {
+                block();
+                return;
+            }
+            dispatch(msg);
+        }
+    }
+
+    private void dispatch(ACLMessage msg) {
+        for (int i = 0; i < templates.size(); i++) {
+            if (templates.get(i).match(msg)) {
+                dispatched.incrementAndGet();
+                if (!handlers.get(i).handle(msg)) {
+                    stale.incrementAndGet();
+                    EventLog.log(DEBUG, myAgent.getLocalName(), "STALE_MESSAGE", msg.getConversationId(),
+                            ACLMessage.getPerformative(msg.getPerformative()));
+                }
+                return;
+            }
+        }
+        unexpected.incrementAndGet();
+        EventLog.log(DEBUG, myAgent.getLocalName(), "UNEXPECTED_MESSAGE", msg.getConversationId(),
+                ACLMessage.getPerformative(msg.getPerformative()));
+    }
+}
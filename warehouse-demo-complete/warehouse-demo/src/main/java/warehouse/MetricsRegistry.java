@@ -0,0 +1,202 @@
+package warehouse;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MetricsRegistry - Named counters, gauges and histograms of one agent
+ *
+ * Responsibilities:
+ * - Hand out counters (AtomicLong), gauges (AtomicLong set by periodic
+ *   sampling) and Histograms; callers keep the references, so recording
+ *   does not look anything up
+ * - Expose every metric as a read-only attribute of a JMX MBean named
+ *   warehouse:type=&lt;agent class&gt;,name=&lt;agent name&gt; (histograms as
+ *   name.count/mean/p50/p95/p99/max)
+ * - Write all registries of the JVM to a snapshot file every interval when
+ *   -Dwarehouse.metrics.file=&lt;path&gt; is set
+ *   (-Dwarehouse.metrics.intervalMs, default 10000)
+ *
+ * Gauges are sampled by the owning agent's own thread (see SAMPLE_INTERVAL_MS),
+ * so readers never touch agent state directly.
+ */
+public class MetricsRegistry implements DynamicMBean {
+
+    static final long SAMPLE_INTERVAL_MS = 5000;
+
+    private static final String SNAPSHOT_FILE_PROPERTY = "warehouse.metrics.file";
+    private static final String SNAPSHOT_INTERVAL_PROPERTY = "warehouse.metrics.intervalMs";
+    private static final Map<String, MetricsRegistry> registries = new ConcurrentSkipListMap<>();
+    private static Timer snapshotTimer;
+
+    private final String name;
+    private final ObjectName objectName;
+    private final Map<String, AtomicLong> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicLong> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    private MetricsRegistry(String type, String name) throws MalformedObjectNameException {
+        this.name = name;
+        this.objectName = new ObjectName("warehouse:type=" + ObjectName.quote(type) +
+                ",name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Create the registry of an agent and publish it over JMX
+     */
+    public static MetricsRegistry register(String type, String name) {
+        try {
+            MetricsRegistry registry = new MetricsRegistry(type, name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(registry.objectName)) {
+                server.unregisterMBean(registry.objectName);
+            }
+            server.registerMBean(registry, registry.objectName);
+            registries.put(name, registry);
+            startSnapshots();
+            return registry;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics for " + name, e);
+        }
+    }
+
+    /**
+     * Remove the registry from JMX and from the snapshot file (agent takeDown)
+     */
+    public void unregister() {
+        registries.remove(name, this);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public AtomicLong counter(String metric) {
+        return counters.computeIfAbsent(metric, k -> new AtomicLong());
+    }
+
+    public AtomicLong gauge(String metric) {
+        return gauges.computeIfAbsent(metric, k -> new AtomicLong());
+    }
+
+    public Histogram histogram(String metric) {
+        return histograms.computeIfAbsent(metric, k -> new Histogram());
+    }
+
+    // ---- Snapshot file ----
+
+    private static synchronized void startSnapshots() {
+        String file = System.getProperty(SNAPSHOT_FILE_PROPERTY);
+        if (file == null || snapshotTimer != null) {
+            return;
+        }
+        long interval = Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, 10000L);
+        Path path = Paths.get(file);
+        snapshotTimer = new Timer("metrics-snapshot", true);
+        snapshotTimer.scheduleAtFixedRate(new TimerTask() {
+            public void run() {
+                try {
+                    writeSnapshot(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Write every registry as name.metric=value lines; the file is replaced
+     * atomically so readers never see a half-written snapshot
+     */
+    static void writeSnapshot(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write("# warehouse metrics snapshot " + new Date() + "\n");
+            for (MetricsRegistry registry : registries.values()) {
+                for (Map.Entry<String, Object> metric : registry.values().entrySet()) {
+                    out.write(registry.name + "." + metric.getKey() + "=" + metric.getValue() + "\n");
+                }
+            }
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Current value of every attribute, in name order
+     */
+    Map<String, Object> values() {
+        Map<String, Object> values = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().get());
+        }
+        for (Map.Entry<String, AtomicLong> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            values.put(entry.getKey() + ".count", histogram.count());
+            values.put(entry.getKey() + ".mean", histogram.mean());
+            values.put(entry.getKey() + ".p50", histogram.percentile(0.50));
+            values.put(entry.getKey() + ".p95", histogram.percentile(0.95));
+            values.put(entry.getKey() + ".p99", histogram.percentile(0.99));
+            values.put(entry.getKey() + ".max", histogram.max());
+        }
+        return values;
+    }
+
+    // ---- DynamicMBean ----
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = values().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = values();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute)) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> value : values().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+                    value.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Warehouse metrics of " + name,
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
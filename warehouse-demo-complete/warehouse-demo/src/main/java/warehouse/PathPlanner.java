@@ -0,0 +1,223 @@
+package warehouse;
+
+import java.util.*;
+
+/**
+ * PathPlanner - A* route planning on the warehouse occupancy grid
+ *
+ * Robots move between 4-connected free cells. To keep bidding cheap the
+ * planner keeps:
+ * - an LRU cache of recently planned routes
+ * - BFS distance fields for frequently requested targets (pickup and
+ *   delivery points), which answer path-length queries in O(1)
+ *
+ * Targets that fall on a blocked cell (a rack slot) are served from the
+ * nearest free cell. One planner is shared by all robots in a JVM, so all
+ * public methods are synchronized.
+ */
+public class PathPlanner {
+
+    private static final int ROUTE_CACHE_SIZE = 256;
+    private static final int DISTANCE_FIELD_BUDGET = 1 << 20; // Total cells held across all fields
+    private static final int DISTANCE_FIELD_THRESHOLD = 3; // Queries before a target is "frequent"
+    private static final int UNREACHABLE = -1;
+
+    private static PathPlanner shared;
+
+    private final WarehouseMap map;
+    private final Map<Long, int[]> routeCache = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > ROUTE_CACHE_SIZE;
+        }
+    };
+    private final Map<Integer, int[]> distanceFields;
+    private final Map<Integer, Integer> targetHits = new HashMap<>();
+
+    public PathPlanner(WarehouseMap map) {
+        this.map = map;
+        // Small floors can keep a field for every cell; large ones keep the hottest targets
+        final int maxFields = Math.max(1, DISTANCE_FIELD_BUDGET / map.cellCount());
+        this.distanceFields = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > maxFields;
+            }
+        };
+    }
+
+    /**
+     * Planner for the default warehouse layout, shared by every agent in the JVM
+     */
+    public static synchronized PathPlanner shared() {
+        if (shared == null) {
+            shared = new PathPlanner(WarehouseMap.createDefault());
+        }
+        return shared;
+    }
+
+    public WarehouseMap getMap() {
+        return map;
+    }
+
+    /**
+     * Route from one point to another as packed cells, excluding the start
+     * and ending at the goal. Returns null if no route exists.
+     */
+    public synchronized int[] findPath(int fromX, int fromY, int toX, int toY) {
+        int start = map.nearestFreeCell(fromX, fromY);
+        int goal = map.nearestFreeCell(toX, toY);
+        if (start < 0 || goal < 0) {
+            return null;
+        }
+        long key = ((long) start << 32) | goal;
+        int[] route = routeCache.get(key);
+        if (route == null && !routeCache.containsKey(key)) {
+            route = aStar(start, goal);
+            routeCache.put(key, route);
+        }
+        return route;
+    }
+
+    /**
+     * Number of steps on the shortest route, or -1 if the goal is unreachable
+     */
+    public synchronized int pathLength(int fromX, int fromY, int toX, int toY) {
+        int start = map.nearestFreeCell(fromX, fromY);
+        int goal = map.nearestFreeCell(toX, toY);
+        if (start < 0 || goal < 0) {
+            return UNREACHABLE;
+        }
+
+        // The grid is undirected, so a field around either end will do
+        int[] field = distanceFields.get(goal);
+        if (field != null) {
+            return field[start];
+        }
+        field = distanceFields.get(start);
+        if (field != null) {
+            return field[goal];
+        }
+
+        int hits = targetHits.merge(goal, 1, Integer::sum);
+        if (hits >= DISTANCE_FIELD_THRESHOLD) {
+            return distanceField(goal)[start];
+        }
+
+        int[] route = findPath(fromX, fromY, toX, toY);
+        return route == null ? UNREACHABLE : route.length;
+    }
+
+    /**
+     * Build the distance field for a known hot spot up front
+     */
+    public synchronized void precompute(int x, int y) {
+        int goal = map.nearestFreeCell(x, y);
+        if (goal >= 0) {
+            distanceField(goal);
+        }
+    }
+
+    private int[] distanceField(int goal) {
+        int[] field = distanceFields.get(goal);
+        if (field == null) {
+            field = bfs(goal);
+            distanceFields.put(goal, field);
+        }
+        return field;
+    }
+
+    /**
+     * Breadth-first distances from every free cell to the goal
+     */
+    private int[] bfs(int goal) {
+        int[] dist = new int[map.cellCount()];
+        Arrays.fill(dist, UNREACHABLE);
+        int[] queue = new int[map.cellCount()];
+        int head = 0;
+        int tail = 0;
+        dist[goal] = 0;
+        queue[tail++] = goal;
+        int[] next = new int[4];
+        while (head < tail) {
+            int current = queue[head++];
+            int count = neighbours(current, next);
+            for (int i = 0; i < count; i++) {
+                if (dist[next[i]] == UNREACHABLE) {
+                    dist[next[i]] = dist[current] + 1;
+                    queue[tail++] = next[i];
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * A* with the Manhattan distance heuristic
+     */
+    private int[] aStar(int start, int goal) {
+        if (start == goal) {
+            return new int[0];
+        }
+        int cells = map.cellCount();
+        int[] gScore = new int[cells];
+        int[] cameFrom = new int[cells];
+        boolean[] closed = new boolean[cells];
+        Arrays.fill(gScore, Integer.MAX_VALUE);
+        gScore[start] = 0;
+
+        // Entries pack (f-score << 32 | cell) so the queue orders by f-score
+        PriorityQueue<Long> open = new PriorityQueue<>();
+        open.add(((long) heuristic(start, goal) << 32) | start);
+        int[] next = new int[4];
+
+        while (!open.isEmpty()) {
+            int current = (int) (open.poll() & 0xFFFFFFFFL);
+            if (current == goal) {
+                return reconstruct(cameFrom, start, goal, gScore[goal]);
+            }
+            if (closed[current]) {
+                continue;
+            }
+            closed[current] = true;
+
+            int count = neighbours(current, next);
+            for (int i = 0; i < count; i++) {
+                int neighbour = next[i];
+                int tentative = gScore[current] + 1;
+                if (tentative < gScore[neighbour]) {
+                    gScore[neighbour] = tentative;
+                    cameFrom[neighbour] = current;
+                    open.add(((long) (tentative + heuristic(neighbour, goal)) << 32) | neighbour);
+                }
+            }
+        }
+        return null;
+    }
+
+    private int[] reconstruct(int[] cameFrom, int start, int goal, int length) {
+        int[] route = new int[length];
+        int current = goal;
+        for (int i = length - 1; i >= 0; i--) {
+            route[i] = current;
+            current = cameFrom[current];
+        }
+        return route;
+    }
+
+    private int heuristic(int from, int to) {
+        return Math.abs(map.cellX(from) - map.cellX(to)) + Math.abs(map.cellY(from) - map.cellY(to));
+    }
+
+    /**
+     * Fill out with the free 4-connected neighbours of a cell, returning how many there are
+     */
+    private int neighbours(int cell, int[] out) {
+        int x = map.cellX(cell);
+        int y = map.cellY(cell);
+        int count = 0;
+        if (map.isFree(x + 1, y)) out[count++] = cell + 1;
+        if (map.isFree(x - 1, y)) out[count++] = cell - 1;
+        if (map.isFree(x, y + 1)) out[count++] = cell + map.width();
+        if (map.isFree(x, y - 1)) out[count++] = cell - map.width();
+        return count;
+    }
+}
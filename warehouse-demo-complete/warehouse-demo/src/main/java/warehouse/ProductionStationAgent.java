@@ -0,0 +1,529 @@
+package warehouse;
+
+import jade.core.Agent;
+import jade.core.AID;
+import jade.core.behaviours.*;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.*;
+import jade.domain.FIPAException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static warehouse.EventLog.Level.*;
+
+/**
+ * ProductionStationAgent - Represents a manufacturing station
+ *
+ * Responsibilities:
+ * - Simulate production activities, consuming each material per its recipe
+ * - Track the demand rate of every material and the delivery lead time
+ * - Forecast stockouts and reorder so materials arrive just in time,
+ *   consolidating every material that will be due soon into one request
+ * - Reserve each order with the StockAgent in the stocked warehouse bin
+ *   nearest the station, which becomes the pickup point (with no stock
+ *   agent running, in a stock of the station's own)
+ * - Credit inventory only when the coordinator relays the robot's delivery
+ *   confirmation, and have the stock take the delivered units out of the bin
+ * - Cancel an order that is not confirmed in time with the coordinator
+ *   before releasing its reservation and ordering again
+ *
+ * Optional arguments: stationType, x, y (delivery point, default 10,10)
+ */
+public class ProductionStationAgent extends Agent {
+
+    private String stationType;
+    // Station timing and stock policy (also used by WarehouseSimulation)
+    static final int[] CYCLES_PER_UNIT = {1, 1, 2, 4}; // Recipe: production cycles per unit, by ItemType ordinal
+    static final int INITIAL_INVENTORY = 10; // Per material
+    static final long PRODUCTION_INTERVAL_MS = 8000;
+    static final long INVENTORY_CHECK_MS = 5000;
+    static final long INITIAL_LEAD_TIME_MS = 15000;      // Lead time assumed before the first delivery
+    static final double LEAD_TIME_SAFETY = 1.5;
+    static final long CONSOLIDATION_HORIZON_MS = 30000;  // Also ship what runs out this much later
+    static final long COVER_MS = 60000;                  // Stock a delivery should leave beyond the lead time
+    static final long ORDER_TIMEOUT_MS = 180000;         // Cancel an order that is not confirmed by then
+    static final long CANCEL_TIMEOUT_MS = 10000;         // Abandon an order whose cancel is not answered
+    static final long STOCK_TIMEOUT_MS = 5000;           // Wait for the stock agent's reservation
+    static final long STOCK_SEARCH_INTERVAL_MS = 10000;
+
+    /**
+     * Where the open order stands: waiting for the stock's reservation, for
+     * the delivery, or for the coordinator's answer to a cancel
+     */
+    private enum OrderStage { RESERVING, REQUESTED, CANCELLING }
+
+    private final int[] inventory = new int[ItemType.values().length];
+    private final ConsumptionForecast forecast = newForecast();
+    private long productionCycle = 0;
+    private int locationX = 10;
+    private int locationY = 10;
+    private ZoneDirectory coordinators;
+    private AID stockAgent;          // Owner of the warehouse stock, null if none was found
+    private long stockSearchedAt;
+    private WarehouseStock ownStock; // Used while there is no stock agent
+
+    // Open order: at most one at a time
+    private String pendingOrder; // Conversation ID, null if none
+    private OrderStage orderStage;
+    private long stageSince;
+    private AID orderStock;      // Stock agent holding the order's reservation, null for ownStock
+    private AID orderCoordinator;
+    private int orderItems;      // What the stock was asked for
+    private WarehouseStock.Pickup orderPickup;
+    private long orderSentAt;
+
+    // Metrics (see MetricsRegistry)
+    private MetricsRegistry metrics;
+    private AtomicLong requestsSent;
+    private AtomicLong deliveriesReceived;
+    private AtomicLong ordersFailed;
+    private AtomicLong productionCycles;
+    private AtomicLong stockouts;
+    private AtomicLong warehouseShortages;
+
+    protected void setup() {
+        Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            stationType = args[0].toString();
+        } else {
+            stationType = "GENERIC";
+        }
+        if (args != null && args.length >= 3) {
+            locationX = Integer.parseInt(args[1].toString());
+            locationY = Integer.parseInt(args[2].toString());
+        }
+        WarehouseMap map = PathPlanner.shared().getMap();
+        int cell = map.nearestFreeCell(locationX, locationY);
+        locationX = map.cellX(cell);
+        locationY = map.cellY(cell);
+        PathPlanner.shared().precompute(locationX, locationY); // Every delivery ends here
+        Arrays.fill(inventory, INITIAL_INVENTORY);
+
+        EventLog.log(INFO, getLocalName(), "READY", "ProductionStationAgent", stationType, locationX, locationY,
+                     Double.NaN);
+
+        metrics = MetricsRegistry.register("ProductionStationAgent", getLocalName());
+        requestsSent = metrics.counter("requestsSent");
+        deliveriesReceived = metrics.counter("deliveriesReceived");
+        ordersFailed = metrics.counter("ordersFailed");
+        productionCycles = metrics.counter("productionCycles");
+        stockouts = metrics.counter("stockouts");
+        warehouseShortages = metrics.counter("warehouseShortages");
+
+        // Find coordinator
+        addBehaviour(new OneShotBehaviour() {
+            public void action() {
+                findCoordinator();
+            }
+        });
+
+        // Simulate production consumption
+        addBehaviour(new TickerBehaviour(this, PRODUCTION_INTERVAL_MS) {
+            protected void onTick() {
+                simulateProduction();
+            }
+        });
+
+        // Monitor inventory
+        addBehaviour(new TickerBehaviour(this, INVENTORY_CHECK_MS) {
+            protected void onTick() {
+                checkInventory();
+            }
+        });
+
+        // One behavior reads the mailbox: reservations, delivery confirmations, failures and refused cancels
+        addBehaviour(new MessageDispatcher(this, metrics)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchConversationId(TaskCodec.STOCK_CONVERSATION),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                                MessageTemplate.MatchPerformative(ACLMessage.REFUSE))), this::handleReservation)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchOntology(TaskCodec.LIFECYCLE_ONTOLOGY),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                                MessageTemplate.or(
+                                        MessageTemplate.MatchPerformative(ACLMessage.FAILURE),
+                                        MessageTemplate.MatchPerformative(ACLMessage.REFUSE)))), this::handleDelivery));
+
+        // Periodically sample inventory, lead time and mailbox into metrics gauges
+        addBehaviour(new TickerBehaviour(this, MetricsRegistry.SAMPLE_INTERVAL_MS) {
+            protected void onTick() {
+                int total = 0;
+                for (ItemType type : ItemType.values()) {
+                    metrics.gauge("inventory" + type).set(inventory[type.ordinal()]);
+                    total += inventory[type.ordinal()];
+                }
+                metrics.gauge("inventory").set(total);
+                metrics.gauge("leadTimeMs").set(forecast.leadTimeMs());
+                metrics.gauge("mailboxDepth").set(getCurQueueSize());
+            }
+        });
+    }
+
+    private void findCoordinator() {
+        try {
+            ZoneDirectory directory = ZoneDirectory.search(this);
+            if (directory != null && coordinators == null) {
+                EventLog.log(INFO, getLocalName(), "COORDINATOR_FOUND",
+                        directory.coordinatorFor(0, PathPlanner.shared().getMap().width()).getLocalName(), directory.zones());
+            }
+            if (directory != null) {
+                coordinators = directory;
+            }
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void findStock() {
+        long now = System.currentTimeMillis();
+        if (stockAgent != null || now - stockSearchedAt < STOCK_SEARCH_INTERVAL_MS) {
+            return;
+        }
+        stockSearchedAt = now;
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(StockAgent.SERVICE_TYPE);
+        template.addServices(sd);
+        try {
+            DFAgentDescription[] result = DFService.search(this, template);
+            if (result.length > 0) {
+                stockAgent = result[0].getName();
+                EventLog.log(INFO, getLocalName(), "STOCK_FOUND", stockAgent.getLocalName());
+            }
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Forecast primed with the recipe's nominal demand
+     */
+    static ConsumptionForecast newForecast() {
+        double[] rates = new double[CYCLES_PER_UNIT.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = 1.0 / (CYCLES_PER_UNIT[i] * PRODUCTION_INTERVAL_MS);
+        }
+        return new ConsumptionForecast(rates, INITIAL_LEAD_TIME_MS);
+    }
+
+    /**
+     * Units of an item the recipe needs in the given production cycle
+     */
+    static int demand(int item, long cycle) {
+        return cycle % CYCLES_PER_UNIT[item] == 0 ? 1 : 0;
+    }
+
+    /**
+     * Run one production cycle: consume the recipe if every material is in
+     * stock, otherwise count a stockout. Returns false on a stockout.
+     */
+    static boolean produce(int[] inventory, long cycle, ConsumptionForecast forecast, long now) {
+        boolean inStock = true;
+        for (int i = 0; i < inventory.length; i++) {
+            forecast.recordDemand(i, demand(i, cycle), now);
+            if (inventory[i] < demand(i, cycle)) {
+                inStock = false;
+            }
+        }
+        if (inStock) {
+            for (int i = 0; i < inventory.length; i++) {
+                inventory[i] -= demand(i, cycle);
+            }
+        }
+        return inStock;
+    }
+
+    /**
+     * Item mask to order now, or 0 if nothing is due. An item is due when it
+     * would run out within the lead time (with a safety margin and one check
+     * interval); once something is due, every item running out within the
+     * consolidation horizon after that rides along on the same trip.
+     */
+    static int itemsToOrder(ConsumptionForecast forecast, int[] inventory) {
+        long due = reorderHorizonMs(forecast);
+        boolean anyDue = false;
+        int items = 0;
+        for (int i = 0; i < inventory.length; i++) {
+            long untilStockout = forecast.msUntilStockout(i, inventory[i]);
+            if (untilStockout <= due) {
+                anyDue = true;
+            }
+            if (untilStockout <= due + CONSOLIDATION_HORIZON_MS) {
+                items |= ItemType.fromCode(i).bit();
+            }
+        }
+        return anyDue ? items : 0;
+    }
+
+    /**
+     * Order-up-to quantities: enough of each ordered item to last the lead time
+     * plus COVER_MS after the delivery
+     */
+    static int[] orderQuantities(ConsumptionForecast forecast, int[] inventory, int items) {
+        int[] quantities = new int[inventory.length];
+        long horizon = reorderHorizonMs(forecast) + COVER_MS;
+        for (int i = 0; i < inventory.length; i++) {
+            if (ItemType.fromCode(i).in(items)) {
+                int target = (int) Math.ceil(forecast.ratePerMs(i) * horizon);
+                quantities[i] = Math.max(1, target - inventory[i]);
+            }
+        }
+        return quantities;
+    }
+
+    /**
+     * Urgency 0-30, rising as the earliest forecast stockout approaches
+     */
+    static int orderUrgency(ConsumptionForecast forecast, int[] inventory, int items) {
+        long due = Math.max(1, reorderHorizonMs(forecast));
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < inventory.length; i++) {
+            if (ItemType.fromCode(i).in(items)) {
+                earliest = Math.min(earliest, forecast.msUntilStockout(i, inventory[i]));
+            }
+        }
+        return (int) Math.max(0, Math.min(30, 30 * (due - earliest) / due));
+    }
+
+    private static long reorderHorizonMs(ConsumptionForecast forecast) {
+        return (long) (forecast.leadTimeMs() * LEAD_TIME_SAFETY) + INVENTORY_CHECK_MS;
+    }
+
+    private void simulateProduction() {
+        productionCycles.incrementAndGet();
+        if (produce(inventory, productionCycle++, forecast, System.currentTimeMillis())) {
+            EventLog.log(DEBUG, getLocalName(), "PRODUCED", null, inventory[0]);
+        } else {
+            stockouts.incrementAndGet();
+            EventLog.log(WARN, getLocalName(), "STOCKOUT", null, inventory[0]);
+        }
+    }
+
+    private void checkInventory() {
+        if (pendingOrder != null && !orderTimedOut(System.currentTimeMillis())) {
+            return;
+        }
+        int items = itemsToOrder(forecast, inventory);
+        if (items != 0) {
+            // Refresh the zone map so coordinators that joined or left are noticed
+            findCoordinator();
+            if (coordinators != null) {
+                reserveMaterials(items);
+            }
+        }
+    }
+
+    /**
+     * Move an open order on once it has waited too long in its stage: a
+     * reservation the stock agent does not answer is dropped, an unconfirmed
+     * order is cancelled with the coordinator (its robot may still be on the
+     * way), and an order whose cancel nobody answers is abandoned. Returns
+     * true once the order is closed.
+     */
+    private boolean orderTimedOut(long now) {
+        long waited = now - stageSince;
+        if (orderStage == OrderStage.RESERVING) {
+            if (waited < STOCK_TIMEOUT_MS) {
+                return false;
+            }
+            EventLog.log(WARN, getLocalName(), "STOCK_TIMEOUT", pendingOrder, orderStock.getLocalName());
+            stockAgent = null; // Look it up again
+        } else if (orderStage == OrderStage.REQUESTED) {
+            if (waited >= ORDER_TIMEOUT_MS) {
+                EventLog.log(WARN, getLocalName(), "ORDER_TIMEOUT", pendingOrder);
+                cancelOrder();
+            }
+            return false;
+        } else {
+            if (waited < CANCEL_TIMEOUT_MS) {
+                return false;
+            }
+            EventLog.log(WARN, getLocalName(), "ORDER_ABANDONED", pendingOrder, orderCoordinator.getLocalName());
+        }
+        ordersFailed.incrementAndGet();
+        closeOrder(false);
+        return true;
+    }
+
+    private void startStage(OrderStage stage) {
+        orderStage = stage;
+        stageSince = System.currentTimeMillis();
+    }
+
+    /**
+     * Reserve the order in the nearest bin that stocks it: with the stock
+     * agent, which answers in handleReservation, or in the station's own
+     * stock if there is none
+     */
+    private void reserveMaterials(int items) {
+        String order = "material-request-" + getLocalName() + "-" + System.currentTimeMillis();
+        int[] quantities = orderQuantities(forecast, inventory, items);
+        findStock();
+        pendingOrder = order;
+        orderItems = items;
+        orderStock = stockAgent;
+        startStage(OrderStage.RESERVING);
+        if (stockAgent != null) {
+            ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+            msg.addReceiver(stockAgent);
+            msg.setConversationId(TaskCodec.STOCK_CONVERSATION);
+            msg.setReplyWith(order);
+            msg.setByteSequenceContent(TaskCodec.encodeStock(items, locationX, locationY, quantities));
+            send(msg);
+            return;
+        }
+        if (ownStock == null) {
+            ownStock = new WarehouseStock(PathPlanner.shared().getMap());
+        }
+        requestMaterials(ownStock.reserve(order, items, quantities, locationX, locationY,
+                                          System.currentTimeMillis()));
+    }
+
+    /**
+     * Take the stock agent's answer to the open reservation; a reservation
+     * for an order given up in the meantime is released again
+     */
+    private boolean handleReservation(ACLMessage msg) {
+        byte[] pickup = TaskCodec.stockPayload(msg);
+        String order = msg.getInReplyTo();
+        if (pendingOrder == null || !pendingOrder.equals(order) || orderStage != OrderStage.RESERVING) {
+            if (pickup != null && order != null) {
+                sendStock(ACLMessage.CANCEL, msg.getSender(), order, null);
+            }
+            return false;
+        }
+        if (msg.getPerformative() == ACLMessage.REFUSE || pickup == null) {
+            requestMaterials(null);
+        } else {
+            requestMaterials(new WarehouseStock.Pickup(TaskCodec.stockX(pickup), TaskCodec.stockY(pickup),
+                    TaskCodec.stockItems(pickup), TaskCodec.stockQuantities(pickup)));
+        }
+        return true;
+    }
+
+    /**
+     * Ask the coordinator of the reserved bin's zone to move the order here.
+     * Items the bin cannot supply stay due and are ordered again after this
+     * delivery; with nothing in stock at all the order is dropped.
+     */
+    private void requestMaterials(WarehouseStock.Pickup pickup) {
+        if (pickup == null || pickup.items != orderItems) {
+            warehouseShortages.incrementAndGet();
+            EventLog.log(WARN, getLocalName(), "OUT_OF_STOCK", ItemType.describe(orderItems),
+                         pickup == null ? null : ItemType.describe(pickup.items));
+            if (pickup == null) {
+                pendingOrder = null;
+                return;
+            }
+        }
+        int urgency = orderUrgency(forecast, inventory, pickup.items);
+
+        TransportTask request = new TransportTask(0, pickup.items, pickup.x, pickup.y, locationX, locationY, urgency);
+
+        // The coordinator of the pickup's zone allocates the job
+        AID coordinator = coordinators.coordinatorFor(pickup.x, PathPlanner.shared().getMap().width());
+        ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+        msg.addReceiver(coordinator);
+        msg.setByteSequenceContent(TaskCodec.encodeTask(request));
+        msg.setConversationId(pendingOrder);
+        send(msg);
+        requestsSent.incrementAndGet();
+
+        // One open order at a time; credited when the delivery is confirmed
+        orderCoordinator = coordinator;
+        orderPickup = pickup;
+        orderSentAt = System.currentTimeMillis();
+        startStage(OrderStage.REQUESTED);
+
+        EventLog.log(INFO, getLocalName(), "REQUESTED", coordinator.getLocalName(), ItemType.describe(pickup.items),
+                     urgency);
+    }
+
+    /**
+     * Ask the coordinator to withdraw the open order. It answers FAILURE once
+     * the task is withdrawn (or if it does not know it), or REFUSE if the
+     * robot is already carrying it, in which case the station waits again.
+     */
+    private void cancelOrder() {
+        ACLMessage cancel = new ACLMessage(ACLMessage.CANCEL);
+        cancel.addReceiver(orderCoordinator);
+        cancel.setOntology(TaskCodec.LIFECYCLE_ONTOLOGY);
+        cancel.setConversationId(pendingOrder);
+        send(cancel);
+        startStage(OrderStage.CANCELLING);
+    }
+
+    /**
+     * Close the open order: take the delivered units out of the stock, or
+     * release the reservation of an order that failed
+     */
+    private void closeOrder(boolean delivered) {
+        if (orderStock != null) {
+            byte[] pickup = delivered ? TaskCodec.encodeStock(orderPickup.items, orderPickup.x, orderPickup.y,
+                                                              orderPickup.quantities) : null;
+            sendStock(delivered ? ACLMessage.CONFIRM : ACLMessage.CANCEL, orderStock, pendingOrder, pickup);
+        } else if (!delivered) {
+            ownStock.release(pendingOrder);
+        } else if (!ownStock.take(pendingOrder, orderPickup, System.currentTimeMillis())) {
+            EventLog.log(WARN, getLocalName(), "NO_RESERVATION", pendingOrder);
+        }
+        pendingOrder = null;
+        orderPickup = null;
+    }
+
+    private void sendStock(int performative, AID holder, String order, byte[] pickup) {
+        ACLMessage msg = new ACLMessage(performative);
+        msg.addReceiver(holder);
+        msg.setConversationId(TaskCodec.STOCK_CONVERSATION);
+        msg.setReplyWith(order);
+        if (pickup != null) {
+            msg.setByteSequenceContent(pickup);
+        }
+        send(msg);
+    }
+
+    /**
+     * Credit an order when the coordinator relays the robot's delivery
+     * confirmation (INFORM), or drop it on a FAILURE so the next inventory
+     * check can reorder; a REFUSE means a cancel came too late and the
+     * delivery is still coming. Outcomes of other orders are stale.
+     */
+    private boolean handleDelivery(ACLMessage msg) {
+        if (pendingOrder == null || !pendingOrder.equals(msg.getConversationId()) ||
+                orderStage == OrderStage.RESERVING) {
+            EventLog.log(WARN, getLocalName(), "UNKNOWN_ORDER", msg.getConversationId(), msg.getContent());
+            return false;
+        }
+        if (msg.getPerformative() == ACLMessage.REFUSE) {
+            if (orderStage != OrderStage.CANCELLING) {
+                return false;
+            }
+            EventLog.log(INFO, getLocalName(), "CANCEL_REFUSED", pendingOrder, msg.getContent());
+            startStage(OrderStage.REQUESTED);
+            return true;
+        }
+        if (msg.getPerformative() == ACLMessage.INFORM) {
+            for (int i = 0; i < inventory.length; i++) {
+                inventory[i] += orderPickup.quantities[i];
+            }
+            forecast.recordLeadTime(System.currentTimeMillis() - orderSentAt);
+            deliveriesReceived.incrementAndGet();
+            EventLog.log(INFO, getLocalName(), "MATERIALS_RECEIVED", pendingOrder, msg.getContent(),
+                         System.currentTimeMillis() - orderSentAt);
+        } else {
+            ordersFailed.incrementAndGet();
+            EventLog.log(WARN, getLocalName(), "ORDER_FAILED", pendingOrder, msg.getContent());
+        }
+        closeOrder(msg.getPerformative() == ACLMessage.INFORM);
+        return true;
+    }
+
+    protected void takeDown() {
+        metrics.unregister();
+        EventLog.log(INFO, getLocalName(), "TERMINATED", null);
+    }
+}
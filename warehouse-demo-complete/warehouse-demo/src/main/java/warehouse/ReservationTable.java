@@ -0,0 +1,276 @@
+package warehouse;
+
+import java.util.*;
+
+/**
+ * ReservationTable - Space-time reservations for congestion-free robot motion
+ *
+ * Time is divided into ticks of one movement step (TransportAgent.MOVE_STEP_MS).
+ * A planned route reserves the cell a robot occupies at every tick, plus
+ * its goal cell for the docking/handling dwell after arrival. Later routes
+ * are planned around those reservations (cooperative A*): a search over
+ * (cell, tick) states where a robot may move to a free neighbour or wait
+ * in place, rejecting
+ * - vertex conflicts: a cell already reserved at that tick, and
+ * - swap conflicts: two robots exchanging cells between the same two ticks.
+ *
+ * The heuristic is the true (rack-aware) distance to the goal. If the goal
+ * cannot be reached within the planning horizon (e.g. it is held by a long
+ * dwell, or robots block a dead end), the robot instead gets a short plan
+ * that makes as much progress as possible, waits or steps aside, and ends
+ * with a retry: callers re-plan when a route does not end at the target.
+ * Because reservations are granted first come, first served and every plan
+ * is conflict-free against all earlier ones, robots following their plans
+ * never meet, so this yield-and-retry is the only deadlock handling needed.
+ *
+ * A robot's resting position is only held for the dwell and a short slack
+ * after its route; idle robots are assumed to park off the aisle.
+ *
+ * Not thread-safe: owned by the TrafficControlAgent (or the simulation).
+ */
+public class ReservationTable {
+
+    static final int HORIZON_TICKS = 200;   // Longest plan searched, in ticks
+    static final int RETRY_TICKS = 10;      // Length of a yield plan before re-planning
+    static final int SLACK_TICKS = 3;       // Extra hold on the final cell, covering the next request
+
+    private final WarehouseMap map;
+    private final Map<Long, Object> holders = new HashMap<>();       // tick * cells + cell -> robot
+    private final Map<Object, List<Long>> byRobot = new HashMap<>();
+
+    // Search scratch space, reused across plans; a state is seen if its stamp is the current one
+    private final int[] cameFrom;
+    private final int[] seenStamp;
+    private int stamp = 0;
+
+    // Statistics
+    private long plans = 0;
+    private long yields = 0;
+    private long waitTicks = 0;
+
+    public ReservationTable(WarehouseMap map) {
+        this.map = map;
+        this.cameFrom = new int[(HORIZON_TICKS + 1) * map.cellCount()];
+        this.seenStamp = new int[(HORIZON_TICKS + 1) * map.cellCount()];
+    }
+
+    /**
+     * Plan and reserve a route for the robot from one cell to another, starting
+     * at startTick. Element i of the result is the robot's cell at tick
+     * startTick + i, so element 0 is the start cell and repeated cells are
+     * waits. If the result does not end at the goal it is a yield plan and
+     * the robot must ask again when it runs out. Returns null if the goal is
+     * unreachable on the static map. Any earlier reservations of the robot
+     * are released first.
+     */
+    public int[] plan(Object robot, int from, int to, long startTick, int dwellTicks) {
+        release(robot);
+        plans++;
+        int[] distance = distanceField(to);
+        if (distance[from] < 0) {
+            return null;
+        }
+
+        int cells = map.cellCount();
+        stamp++;
+        // State = depth * cells + cell, depth = tick - startTick. Entries are {f, depth, state};
+        // ties go to the deeper state, which is closer to the goal
+        PriorityQueue<long[]> open = new PriorityQueue<>(
+                (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+        open.add(new long[]{distance[from], 0, from});
+        seenStamp[from] = stamp;
+        int deepest = from;     // Yield plan candidates: the deepest state reached, and the
+        int progress = -1;      // closest to the goal among those at least RETRY_TICKS deep
+        int[] next = new int[5];
+
+        while (!open.isEmpty()) {
+            long[] entry = open.poll();
+            int state = (int) entry[2];
+            int depth = state / cells;
+            int cell = state % cells;
+            long tick = startTick + depth;
+
+            if (cell == to && free(to, tick + 1, tick + dwellTicks + SLACK_TICKS)) {
+                return reserve(robot, trace(cameFrom, state, cells), startTick, dwellTicks + SLACK_TICKS);
+            }
+            if (depth > deepest / cells) {
+                deepest = state;
+            }
+            if (depth >= RETRY_TICKS && (progress < 0 || distance[cell] < distance[progress % cells])) {
+                progress = state;
+            }
+            if (depth == HORIZON_TICKS) {
+                continue;
+            }
+
+            int count = moves(cell, next);
+            for (int i = 0; i < count; i++) {
+                int target = next[i];
+                int successor = (depth + 1) * cells + target;
+                if (seenStamp[successor] == stamp || !free(target, tick + 1) || swaps(cell, target, tick)) {
+                    continue;
+                }
+                seenStamp[successor] = stamp;
+                cameFrom[successor] = state;
+                open.add(new long[]{depth + 1 + distance[target], depth + 1, successor});
+            }
+        }
+
+        // No conflict-free route within the horizon: make progress, then retry
+        yields++;
+        int[] route = trace(cameFrom, progress >= 0 ? progress : deepest, cells);
+        if (route.length > RETRY_TICKS + 1) {
+            route = Arrays.copyOf(route, RETRY_TICKS + 1);
+        }
+        return reserve(robot, route, startTick, SLACK_TICKS);
+    }
+
+    /**
+     * Drop every reservation held by the robot (e.g. before re-planning or when it leaves)
+     */
+    public void release(Object robot) {
+        List<Long> keys = byRobot.remove(robot);
+        if (keys != null) {
+            for (Long key : keys) {
+                if (robot.equals(holders.get(key))) {
+                    holders.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget reservations for ticks before now
+     */
+    public void expire(long nowTick) {
+        long limit = nowTick * map.cellCount();
+        holders.keySet().removeIf(key -> key < limit);
+        for (Iterator<List<Long>> it = byRobot.values().iterator(); it.hasNext(); ) {
+            List<Long> keys = it.next();
+            keys.removeIf(key -> key < limit);
+            if (keys.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return holders.size();
+    }
+
+    public long plans() {
+        return plans;
+    }
+
+    public long yields() {
+        return yields;
+    }
+
+    /**
+     * Ticks spent waiting in place over all plans
+     */
+    public long waitTicks() {
+        return waitTicks;
+    }
+
+    private int[] reserve(Object robot, int[] route, long startTick, int holdTicks) {
+        List<Long> keys = new ArrayList<>(route.length + holdTicks);
+        int cells = map.cellCount();
+        for (int i = 0; i < route.length; i++) {
+            keys.add(key(route[i], startTick + i, cells));
+            if (i > 0 && route[i] == route[i - 1]) {
+                waitTicks++;
+            }
+        }
+        long end = startTick + route.length - 1;
+        for (int t = 1; t <= holdTicks; t++) {
+            keys.add(key(route[route.length - 1], end + t, cells));
+        }
+        for (Long key : keys) {
+            // Never steal a cell: the start cell may already belong to someone who planned through it
+            if (!holders.containsKey(key)) {
+                holders.put(key, robot);
+            }
+        }
+        byRobot.put(robot, keys);
+        return route;
+    }
+
+    private boolean free(int cell, long tick) {
+        return !holders.containsKey(key(cell, tick, map.cellCount()));
+    }
+
+    private boolean free(int cell, long fromTick, long toTick) {
+        for (long t = fromTick; t <= toTick; t++) {
+            if (!free(cell, t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether moving from one cell to another between tick and tick + 1 swaps with another robot
+     */
+    private boolean swaps(int from, int to, long tick) {
+        if (from == to) {
+            return false;
+        }
+        int cells = map.cellCount();
+        Object ahead = holders.get(key(to, tick, cells));
+        return ahead != null && ahead.equals(holders.get(key(from, tick + 1, cells)));
+    }
+
+    /**
+     * Waiting in place plus the free 4-connected neighbours
+     */
+    private int moves(int cell, int[] out) {
+        int x = map.cellX(cell);
+        int y = map.cellY(cell);
+        int count = 0;
+        out[count++] = cell;
+        if (map.isFree(x + 1, y)) out[count++] = cell + 1;
+        if (map.isFree(x - 1, y)) out[count++] = cell - 1;
+        if (map.isFree(x, y + 1)) out[count++] = cell + map.width();
+        if (map.isFree(x, y - 1)) out[count++] = cell - map.width();
+        return count;
+    }
+
+    private static int[] trace(int[] cameFrom, int state, int cells) {
+        int depth = state / cells;
+        int[] route = new int[depth + 1];
+        for (int i = depth; i > 0; i--) {
+            route[i] = state % cells;
+            state = cameFrom[state];
+        }
+        route[0] = state % cells;
+        return route;
+    }
+
+    /**
+     * Breadth-first distances from every free cell to the goal, -1 where unreachable
+     */
+    private int[] distanceField(int goal) {
+        int[] dist = new int[map.cellCount()];
+        Arrays.fill(dist, -1);
+        dist[goal] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(goal);
+        int[] next = new int[5];
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            int count = moves(cell, next);
+            for (int i = 1; i < count; i++) {
+                if (dist[next[i]] < 0) {
+                    dist[next[i]] = dist[cell] + 1;
+                    queue.add(next[i]);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static long key(int cell, long tick, int cells) {
+        return tick * cells + cell;
+    }
+}
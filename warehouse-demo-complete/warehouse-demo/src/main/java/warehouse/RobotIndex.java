@@ -0,0 +1,203 @@
+package warehouse;
+
+import jade.core.AID;
+import java.util.*;
+
+/**
+ * RobotIndex - Grid-bucket spatial index of transport robot positions
+ *
+ * The warehouse grid is split into square buckets. Each robot lives in the
+ * bucket of its last reported position, so a nearest-robot query only looks
+ * at the buckets around the pickup point instead of the whole fleet.
+ *
+ * Not thread-safe: only used from the coordinator's behaviour thread.
+ */
+public class RobotIndex {
+
+    /**
+     * Last known state of one robot
+     */
+    static class RobotStatus {
+        final AID robot;
+        int x;
+        int y;
+        int battery;
+        boolean available;
+        long updatedAt;
+        int bucket = -1;
+
+        RobotStatus(AID robot) {
+            this.robot = robot;
+        }
+    }
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<List<RobotStatus>> buckets;
+    private final Map<AID, RobotStatus> robots = new HashMap<>();
+    private int availableCount = 0;
+
+    public RobotIndex(int gridSize, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (gridSize + cellSize - 1) / cellSize;
+        this.rows = columns;
+        this.buckets = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Record a status update, moving the robot to its new bucket if needed
+     */
+    public void update(AID robot, int x, int y, int battery, boolean available) {
+        RobotStatus status = robots.get(robot);
+        if (status == null) {
+            status = new RobotStatus(robot);
+            robots.put(robot, status);
+        }
+        int bucket = bucketOf(x, y);
+        if (bucket != status.bucket) {
+            if (status.bucket >= 0) {
+                buckets.get(status.bucket).remove(status);
+            }
+            buckets.get(bucket).add(status);
+            status.bucket = bucket;
+        }
+        status.x = x;
+        status.y = y;
+        status.battery = battery;
+        setAvailable(status, available);
+        status.updatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Mark a robot busy until its next status update (e.g. right after it wins a task)
+     */
+    public void markUnavailable(AID robot) {
+        RobotStatus status = robots.get(robot);
+        if (status != null) {
+            setAvailable(status, false);
+        }
+    }
+
+    /**
+     * Number of robots currently marked available
+     */
+    public int availableCount() {
+        return availableCount;
+    }
+
+    /**
+     * Number of robots per battery band: band i covers [i * 100 / bands, (i + 1) * 100 / bands)
+     */
+    public int[] batteryBands(int bands) {
+        int[] counts = new int[bands];
+        for (RobotStatus status : robots.values()) {
+            int band = Math.max(0, Math.min(bands - 1, status.battery * bands / 100));
+            counts[band]++;
+        }
+        return counts;
+    }
+
+    private void setAvailable(RobotStatus status, boolean available) {
+        if (status.available != available) {
+            availableCount += available ? 1 : -1;
+            status.available = available;
+        }
+    }
+
+    public boolean contains(AID robot) {
+        return robots.containsKey(robot);
+    }
+
+    public RobotStatus get(AID robot) {
+        return robots.get(robot);
+    }
+
+    public int size() {
+        return robots.size();
+    }
+
+    public void remove(AID robot) {
+        RobotStatus status = robots.remove(robot);
+        if (status != null) {
+            setAvailable(status, false);
+            if (status.bucket >= 0) {
+                buckets.get(status.bucket).remove(status);
+            }
+        }
+    }
+
+    /**
+     * Find up to k available robots closest (Manhattan distance) to (x, y)
+     *
+     * Buckets are scanned in rings around the target; the search stops as soon
+     * as no unscanned ring can hold a robot closer than the k-th best so far.
+     */
+    public List<AID> nearestAvailable(int x, int y, int k) {
+        return nearestAvailable(x, y, k, Collections.<AID>emptySet());
+    }
+
+    /**
+     * Same as nearestAvailable(x, y, k), skipping the excluded robots
+     */
+    public List<AID> nearestAvailable(int x, int y, int k, Set<AID> excluded) {
+        List<AID> result = new ArrayList<>(k);
+        if (k <= 0) {
+            return result;
+        }
+
+        PriorityQueue<RobotStatus> best = new PriorityQueue<>(k,
+                (a, b) -> Integer.compare(distance(b, x, y), distance(a, x, y)));
+        int cx = clamp(x) / cellSize;
+        int cy = clamp(y) / cellSize;
+        int maxRing = Math.max(columns, rows);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Any robot in this ring is at least this far away
+            int lowerBound = ring == 0 ? 0 : (ring - 1) * cellSize + 1;
+            if (best.size() == k && distance(best.peek(), x, y) < lowerBound) {
+                break;
+            }
+            for (int bx = cx - ring; bx <= cx + ring; bx++) {
+                for (int by = cy - ring; by <= cy + ring; by++) {
+                    boolean onRing = Math.abs(bx - cx) == ring || Math.abs(by - cy) == ring;
+                    if (!onRing || bx < 0 || by < 0 || bx >= columns || by >= rows) {
+                        continue;
+                    }
+                    for (RobotStatus status : buckets.get(by * columns + bx)) {
+                        if (!status.available || excluded.contains(status.robot)) {
+                            continue;
+                        }
+                        if (best.size() < k) {
+                            best.add(status);
+                        } else if (distance(status, x, y) < distance(best.peek(), x, y)) {
+                            best.poll();
+                            best.add(status);
+                        }
+                    }
+                }
+            }
+        }
+
+        while (!best.isEmpty()) {
+            result.add(best.poll().robot);
+        }
+        Collections.reverse(result); // Closest first
+        return result;
+    }
+
+    private int bucketOf(int x, int y) {
+        return (clamp(y) / cellSize) * columns + clamp(x) / cellSize;
+    }
+
+    private int clamp(int coordinate) {
+        return Math.max(0, Math.min(columns * cellSize - 1, coordinate));
+    }
+
+    private static int distance(RobotStatus status, int x, int y) {
+        return Math.abs(status.x - x) + Math.abs(status.y - y);
+    }
+}
@@ -0,0 +1,166 @@
+package warehouse;
+
+import jade.core.Agent;
+import jade.core.behaviours.*;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.*;
+import jade.domain.FIPAException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static warehouse.EventLog.Level.*;
+
+/**
+ * StockAgent - Keeps the bin inventory of the warehouse racks
+ *
+ * Responsibilities:
+ * - Own the one WarehouseStock of the warehouse, so stations in any
+ *   container reserve from and draw down the same bins
+ * - Answer a station's reservation request with the nearest bin that can
+ *   supply the order (INFORM) or tell it nothing is in stock (REFUSE)
+ * - Take the units out of the bin when the station confirms the delivery,
+ *   and release them when it cancels the order
+ * - Publish reservation, shortage and untracked-take counts as metrics (JMX)
+ *
+ * Each message names its order in reply-with. Stations that find no stock
+ * agent fall back to a stock of their own.
+ */
+public class StockAgent extends Agent {
+
+    static final String SERVICE_TYPE = "warehouse-stock";
+
+    private WarehouseStock stock;
+
+    // Metrics (see MetricsRegistry)
+    private MetricsRegistry metrics;
+    private AtomicLong reservations;
+    private AtomicLong outOfStock;
+    private AtomicLong taken;
+    private AtomicLong takenWithoutHold;
+    private AtomicLong released;
+
+    protected void setup() {
+        stock = new WarehouseStock(PathPlanner.shared().getMap());
+        EventLog.log(INFO, getLocalName(), "READY", "StockAgent", null, stock.binCount());
+
+        registerService();
+
+        metrics = MetricsRegistry.register("StockAgent", getLocalName());
+        reservations = metrics.counter("reservations");
+        outOfStock = metrics.counter("outOfStock");
+        taken = metrics.counter("taken");
+        takenWithoutHold = metrics.counter("takenWithoutHold");
+        released = metrics.counter("released");
+
+        // One behavior reads the mailbox: reservations, takes and releases
+        addBehaviour(new MessageDispatcher(this, metrics)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchConversationId(TaskCodec.STOCK_CONVERSATION),
+                        MessageTemplate.MatchPerformative(ACLMessage.REQUEST)), this::handleReserve)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchConversationId(TaskCodec.STOCK_CONVERSATION),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchPerformative(ACLMessage.CONFIRM),
+                                MessageTemplate.MatchPerformative(ACLMessage.CANCEL))), this::handleOutcome));
+
+        // Periodically sample the stock into metrics gauges
+        addBehaviour(new TickerBehaviour(this, MetricsRegistry.SAMPLE_INTERVAL_MS) {
+            protected void onTick() {
+                long now = System.currentTimeMillis();
+                for (ItemType type : ItemType.values()) {
+                    metrics.gauge("available" + type).set(stock.available(type, now));
+                }
+                metrics.gauge("openReservations").set(stock.openReservations());
+                metrics.gauge("mailboxDepth").set(getCurQueueSize());
+            }
+        });
+    }
+
+    private void registerService() {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE_TYPE);
+        sd.setName("warehouse-stock");
+        dfd.addServices(sd);
+        try {
+            DFService.register(this, dfd);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reserve an order near the station's location and answer with the pickup
+     */
+    private boolean handleReserve(ACLMessage msg) {
+        byte[] request = TaskCodec.stockPayload(msg);
+        String order = msg.getReplyWith();
+        if (request == null || order == null) {
+            EventLog.log(WARN, getLocalName(), "MALFORMED_STOCK_REQUEST", msg.getSender().getLocalName());
+            return false;
+        }
+        WarehouseStock.Pickup pickup = stock.reserve(order, TaskCodec.stockItems(request),
+                TaskCodec.stockQuantities(request), TaskCodec.stockX(request), TaskCodec.stockY(request),
+                System.currentTimeMillis());
+
+        ACLMessage reply = msg.createReply();
+        if (pickup == null) {
+            outOfStock.incrementAndGet();
+            reply.setPerformative(ACLMessage.REFUSE);
+            EventLog.log(WARN, getLocalName(), "OUT_OF_STOCK", order,
+                         ItemType.describe(TaskCodec.stockItems(request)));
+        } else {
+            reservations.incrementAndGet();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setByteSequenceContent(TaskCodec.encodeStock(pickup.items, pickup.x, pickup.y, pickup.quantities));
+            EventLog.log(DEBUG, getLocalName(), "RESERVED", order, ItemType.describe(pickup.items),
+                         pickup.x, pickup.y, Double.NaN);
+        }
+        send(reply);
+        return true;
+    }
+
+    /**
+     * Take a delivered order's units out of stock (CONFIRM, carrying the
+     * pickup) or drop its reservation (CANCEL). A take for an order this
+     * agent holds no reservation for (e.g. it was restarted since) still
+     * draws the units from the pickup bin, and is counted.
+     */
+    private boolean handleOutcome(ACLMessage msg) {
+        String order = msg.getReplyWith();
+        if (order == null) {
+            return false;
+        }
+        if (msg.getPerformative() == ACLMessage.CANCEL) {
+            stock.release(order);
+            released.incrementAndGet();
+            EventLog.log(DEBUG, getLocalName(), "RELEASED", order, msg.getSender().getLocalName());
+            return true;
+        }
+        byte[] delivered = TaskCodec.stockPayload(msg);
+        if (delivered == null) {
+            EventLog.log(WARN, getLocalName(), "MALFORMED_STOCK_TAKE", msg.getSender().getLocalName());
+            return false;
+        }
+        WarehouseStock.Pickup pickup = new WarehouseStock.Pickup(TaskCodec.stockX(delivered),
+                TaskCodec.stockY(delivered), TaskCodec.stockItems(delivered), TaskCodec.stockQuantities(delivered));
+        taken.incrementAndGet();
+        if (!stock.take(order, pickup, System.currentTimeMillis())) {
+            takenWithoutHold.incrementAndGet();
+            EventLog.log(WARN, getLocalName(), "NO_RESERVATION", order, msg.getSender().getLocalName());
+        }
+        return true;
+    }
+
+    protected void takeDown() {
+        try {
+            DFService.deregister(this);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+        metrics.unregister();
+        EventLog.log(INFO, getLocalName(), "TERMINATED", null);
+    }
+}
@@ -0,0 +1,571 @@
+package warehouse;
+
+import jade.core.AID;
+import java.util.*;
+
+/**
+ * TaskAllocator - Contract net allocation of one zone's tasks, without a clock or a transport
+ *
+ * Holds the queued tasks and the robots polled by open auctions, and
+ * decides what happens on each event: which queued tasks go to auction and
+ * which robots are polled, when a round closes and who wins it (lowest bid,
+ * or a batched min-cost assignment), what happens to a task nobody bid on
+ * (retry with backoff or give up), when an assigned task that has not been
+ * picked up is re-auctioned and its assignee challenged, and how many idle
+ * robots the zone can lend a busier one.
+ *
+ * It sends nothing and reads no clock: callers pass the current time, and
+ * the Host carries the decisions out and reports the answers back, as
+ * messages and timers in the CoordinatorAgent or as scheduled events in the
+ * WarehouseSimulation. Both therefore run the same allocation rules.
+ *
+ * Not thread-safe: owned by one coordinator (or one simulated zone).
+ */
+public class TaskAllocator<T extends TaskAllocator.Auction> {
+
+    /**
+     * Allocation state of one task; hosts extend it with their own task data
+     */
+    static class Auction {
+        final TransportTask task;
+        long createdAt;
+        final Map<AID, Double> proposals = new LinkedHashMap<>();
+        boolean assigned = false;
+        AID assignee;
+        long assignedAt;
+
+        // Current bidding round
+        final Set<AID> polled = new HashSet<>();
+        final Set<AID> responded = new HashSet<>();
+        boolean biddingOpen = false;
+        int round = 0;
+        long cfpSentAt;
+        int bids;     // Over all rounds, for the bidsPerTask metric
+        int refusals;
+
+        // Re-auction after assignment
+        int reauctions;
+        double assignedCost = Double.MAX_VALUE; // Winning bid, unknown for tasks taken back from the journal
+        boolean pickedUp;       // The assignee refused a release because it has loaded the task
+        AID challenger;         // Bidder held while the assignee is asked to release the task
+
+        Auction(TransportTask task, long createdAt) {
+            this.task = task;
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * Whether a release request is open for the task; hosts that send
+         * release requests of their own add those
+         */
+        boolean releasePending() {
+            return challenger != null;
+        }
+
+        void releaseBids() {
+            proposals.clear();
+            polled.clear();
+            responded.clear();
+        }
+    }
+
+    /**
+     * Carries out the allocator's decisions
+     */
+    interface Host<T> {
+        /**
+         * Poll the robots for a task; answers go to propose or refuse, and
+         * the round is closed with close at the bid deadline
+         */
+        void callForProposals(T task, List<AID> robots);
+
+        /**
+         * Hand the task to the robot, already recorded as its assignee; the
+         * round's other proposals are still there to be rejected
+         */
+        void award(T task, AID robot);
+
+        /**
+         * Ask the assignee to release the task if it would now bid more than
+         * bar; the answer goes to released or kept, a timeout to challengeExpired
+         */
+        void challenge(T task, AID challenger, double bar);
+
+        /**
+         * Closed auctions wait in the batch: call assignBatch BATCH_WINDOW_MS from now
+         */
+        void scheduleBatch();
+
+        /**
+         * Nobody bid; the task is queued again after the delay
+         */
+        void retry(T task, long delayMs);
+
+        /**
+         * Nobody bid and no round is left (or the policy is FAIL)
+         */
+        void giveUp(T task);
+
+        /**
+         * The task was taken back from its assignee and queued again
+         */
+        void unassigned(T task);
+    }
+
+    private final RobotIndex robots;
+    private final Host<T> host;
+    private final CoordinatorAgent.AllocationMode allocationMode;
+    private final CoordinatorAgent.NoBidPolicy noBidPolicy;
+    private final int cfpFanout;
+    private final Collection<AID> unreported; // Robots to poll before their first status report
+
+    private final TaskQueue<T> pendingTasks = new TaskQueue<>(CoordinatorAgent.AGING_MS_PER_POINT);
+    private final Set<AID> inAuction = new HashSet<>(); // Robots polled by an open bidding round
+    private final List<T> batch = new ArrayList<>();
+    private long robotFreedAt; // Last time a robot reported itself available again
+
+    /**
+     * Allocator polling robots from the index; robots in unreported that
+     * have not reported a status yet top up the candidates
+     */
+    TaskAllocator(RobotIndex robots, Host<T> host, CoordinatorAgent.AllocationMode allocationMode,
+                  CoordinatorAgent.NoBidPolicy noBidPolicy, int cfpFanout, Collection<AID> unreported) {
+        this.robots = robots;
+        this.host = host;
+        this.allocationMode = allocationMode;
+        this.noBidPolicy = noBidPolicy;
+        this.cfpFanout = cfpFanout;
+        this.unreported = unreported;
+    }
+
+    /**
+     * Queue a new task and auction it right away if robots are free
+     */
+    public void submit(T task, long now) {
+        pendingTasks.add(task, task.task.urgency, task.createdAt);
+        dispatch(now);
+    }
+
+    /**
+     * Queue a task without starting auctions, e.g. while recovering
+     */
+    public void enqueue(T task) {
+        pendingTasks.add(task, task.task.urgency, task.createdAt);
+    }
+
+    /**
+     * Start auctions for queued tasks in priority order for as long as there
+     * are free robots that are not already being polled for another task
+     */
+    public void dispatch(long now) {
+        T task;
+        while ((task = pendingTasks.peek(now)) != null) {
+            List<AID> candidates = selectCandidates(task);
+            if (candidates.isEmpty()) {
+                break; // Wait until a robot becomes free
+            }
+            pendingTasks.poll(now);
+            startRound(task, candidates, now);
+        }
+    }
+
+    /**
+     * A robot reported itself available again: auction waiting tasks without
+     * waiting for their backoff or, with nothing waiting, re-auction assigned ones
+     */
+    public void robotFreed(Collection<T> tasks, long now) {
+        robotFreedAt = now;
+        if (pendingTasks.size() > 0) {
+            pendingTasks.releaseDelayed();
+            dispatch(now);
+        } else {
+            reauction(tasks, now);
+        }
+    }
+
+    /**
+     * A robot left the fleet: stop waiting for its answer in open rounds
+     */
+    public void robotLeft(AID robot, Collection<T> tasks, long now) {
+        inAuction.remove(robot);
+        for (T task : new ArrayList<>(tasks)) {
+            if (task.biddingOpen && task.polled.remove(robot) && task.responded.containsAll(task.polled)) {
+                close(task, now);
+            }
+        }
+    }
+
+    /**
+     * Record a bid; false if the round is closed or did not poll the robot
+     */
+    public boolean propose(T task, AID robot, double cost, long now) {
+        if (!task.biddingOpen || !task.polled.contains(robot)) {
+            return false;
+        }
+        task.proposals.put(robot, cost);
+        task.bids++;
+        return answered(task, robot, now);
+    }
+
+    /**
+     * Record a refusal; false if the round is closed or did not poll the robot
+     */
+    public boolean refuse(T task, AID robot, long now) {
+        if (!task.biddingOpen || !task.polled.contains(robot)) {
+            return false;
+        }
+        task.refusals++;
+        return answered(task, robot, now);
+    }
+
+    /**
+     * Close the current bidding round and award the task to the cheapest bid
+     * (for a re-auction round: challenge the assignee with it)
+     */
+    public void close(T task, long now) {
+        task.biddingOpen = false;
+        inAuction.removeAll(task.polled);
+
+        // Ignore bidders that have won another task since they bid
+        for (AID bidder : new ArrayList<>(task.proposals.keySet())) {
+            RobotIndex.RobotStatus status = robots.get(bidder);
+            if (status != null && !status.available) {
+                task.proposals.remove(bidder);
+            }
+        }
+        if (task.assigned) {
+            challenge(task);
+            dispatch(now);
+            return;
+        }
+        if (allocationMode == CoordinatorAgent.AllocationMode.BATCH && !task.proposals.isEmpty()) {
+            inAuction.addAll(task.polled); // Held until the batch is assigned
+            batch.add(task);
+            if (batch.size() == 1) {
+                host.scheduleBatch();
+            }
+            return;
+        }
+
+        AID winner = selectWinner(task.proposals);
+        if (winner == null) {
+            noBids(task, now);
+        } else {
+            award(task, winner, now);
+        }
+
+        // The polled robots are free for other auctions again
+        dispatch(now);
+    }
+
+    /**
+     * Build the task x robot cost matrix from the batched proposals and assign
+     * all tasks at once with the minimum total cost. Returns the number of
+     * tasks assigned; the others are auctioned again.
+     */
+    public int assignBatch(long now) {
+        List<T> tasks = new ArrayList<>(batch);
+        batch.clear();
+        for (T task : tasks) {
+            inAuction.removeAll(task.polled);
+        }
+
+        // Robots that bid on any task in the batch and are still free
+        List<AID> bidders = new ArrayList<>();
+        Map<AID, Integer> column = new HashMap<>();
+        for (T task : tasks) {
+            for (AID bidder : task.proposals.keySet()) {
+                RobotIndex.RobotStatus status = robots.get(bidder);
+                if (!column.containsKey(bidder) && (status == null || status.available)) {
+                    column.put(bidder, bidders.size());
+                    bidders.add(bidder);
+                }
+            }
+        }
+
+        double[][] cost = new double[tasks.size()][bidders.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            Arrays.fill(cost[i], AssignmentSolver.NO_BID);
+            for (Map.Entry<AID, Double> bid : tasks.get(i).proposals.entrySet()) {
+                Integer j = column.get(bid.getKey());
+                if (j != null) {
+                    cost[i][j] = bid.getValue();
+                }
+            }
+        }
+
+        int[] match = AssignmentSolver.solve(cost);
+        int assigned = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (match[i] >= 0) {
+                assigned++;
+                award(tasks.get(i), bidders.get(match[i]), now);
+            } else {
+                // Had bids but lost every bidder to other tasks: auction again without backoff
+                T task = tasks.get(i);
+                task.releaseBids();
+                pendingTasks.add(task, task.task.urgency, task.createdAt);
+            }
+        }
+        dispatch(now);
+        return assigned;
+    }
+
+    /**
+     * Re-auction tasks whose robot has not picked them up yet among the robots
+     * that are free now. Only while no queued task needs those robots, and
+     * only for tasks whose last round was before a robot became free.
+     */
+    public void reauction(Collection<T> tasks, long now) {
+        if (pendingTasks.size() > 0) {
+            return;
+        }
+        for (T task : tasks) {
+            if (idleRobots() == 0) {
+                break;
+            }
+            if (!task.assigned || task.pickedUp || task.biddingOpen || task.releasePending() ||
+                    task.reauctions >= CoordinatorAgent.MAX_REAUCTIONS || task.cfpSentAt >= robotFreedAt) {
+                continue;
+            }
+            List<AID> candidates = robots.nearestAvailable(task.task.pickupX, task.task.pickupY,
+                                                           cfpFanout, inAuction);
+            candidates.remove(task.assignee);
+            if (!candidates.isEmpty() && mayUndercut(candidates.get(0), task)) {
+                task.reauctions++;
+                startRound(task, candidates, now);
+            }
+        }
+    }
+
+    /**
+     * The assignee agreed to release the task: it goes to the challenger if
+     * that robot is still free, otherwise back to the queue. Returns the new
+     * assignee, or null if the task was queued.
+     */
+    public AID released(T task, long now) {
+        AID challenger = endChallenge(task);
+        RobotIndex.RobotStatus status = challenger == null ? null : robots.get(challenger);
+        if (status != null && status.available) {
+            award(task, challenger, now);
+            dispatch(now);
+            return challenger;
+        }
+        requeue(task, now);
+        return null;
+    }
+
+    /**
+     * The assignee refused to release the task and keeps it
+     */
+    public void kept(T task, boolean loaded, long now) {
+        endChallenge(task);
+        task.pickedUp = loaded;
+        task.releaseBids();
+        dispatch(now);
+    }
+
+    /**
+     * Free the challenger if the assignee has not answered in time; a late
+     * AGREE still moves the task (back to the queue)
+     */
+    public void challengeExpired(T task, AID challenger, long now) {
+        if (challenger.equals(task.challenger)) {
+            endChallenge(task);
+            dispatch(now);
+        }
+    }
+
+    /**
+     * Stop holding the challenger of an open release request; returns it, or null
+     */
+    public AID endChallenge(T task) {
+        AID challenger = task.challenger;
+        task.challenger = null;
+        if (challenger != null) {
+            inAuction.remove(challenger);
+        }
+        return challenger;
+    }
+
+    /**
+     * Take a task back from its assignee and queue it for auction again
+     */
+    public void requeue(T task, long now) {
+        task.assigned = false;
+        task.assignee = null;
+        task.pickedUp = false;
+        task.releaseBids();
+        host.unassigned(task);
+        pendingTasks.add(task, task.task.urgency, task.createdAt);
+        dispatch(now);
+    }
+
+    /**
+     * Drop a task that is finished or cancelled from the queue, its open
+     * round or the batch, so later answers for it are stale
+     */
+    public void withdraw(T task) {
+        if (task.biddingOpen) {
+            task.biddingOpen = false;
+            inAuction.removeAll(task.polled);
+        } else if (batch.remove(task)) {
+            inAuction.removeAll(task.polled);
+        }
+        endChallenge(task);
+        pendingTasks.remove(task);
+    }
+
+    /**
+     * Robots this zone can lend a zone that reported queued tasks and no idle
+     * robot: only while nothing waits here, and always keeping one idle robot
+     */
+    public int handOffCount(int peerQueued, int peerIdle) {
+        if (peerQueued == 0 || peerIdle > 0 || pendingTasks.size() > 0 || idleRobots() <= 1) {
+            return 0;
+        }
+        return Math.min(peerQueued, idleRobots() - 1);
+    }
+
+    /**
+     * The idle robots nearest a point, not counting those polled by an auction
+     */
+    public List<AID> idleNear(int x, int y, int count) {
+        return robots.nearestAvailable(x, y, count, inAuction);
+    }
+
+    public int idleRobots() {
+        return Math.max(0, robots.availableCount() - inAuction.size());
+    }
+
+    public int queued() {
+        return pendingTasks.size();
+    }
+
+    public int batched() {
+        return batch.size();
+    }
+
+    /**
+     * The lowest-cost bidder, or null if there are no proposals
+     */
+    static AID selectWinner(Map<AID, Double> proposals) {
+        AID winner = null;
+        double bestCost = Double.MAX_VALUE;
+        for (Map.Entry<AID, Double> bid : proposals.entrySet()) {
+            if (bid.getValue() < bestCost) {
+                bestCost = bid.getValue();
+                winner = bid.getKey();
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Pick the robots to poll for a task: the nearest available ones from the
+     * index, topped up with robots that have not reported a status yet
+     */
+    private List<AID> selectCandidates(T task) {
+        List<AID> candidates = robots.nearestAvailable(task.task.pickupX, task.task.pickupY, cfpFanout, inAuction);
+        for (AID robot : unreported) {
+            if (candidates.size() >= cfpFanout) {
+                break;
+            }
+            if (!robots.contains(robot) && !inAuction.contains(robot)) {
+                candidates.add(robot);
+            }
+        }
+        if (allocationMode == CoordinatorAgent.AllocationMode.BATCH && !candidates.isEmpty()) {
+            // Also poll the nearest robots already bidding elsewhere, so the batch
+            // solver can trade robots between tasks
+            for (AID robot : robots.nearestAvailable(task.task.pickupX, task.task.pickupY, cfpFanout)) {
+                if (!candidates.contains(robot)) {
+                    candidates.add(robot);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private void startRound(T task, List<AID> candidates, long now) {
+        task.round++;
+        task.polled.clear();
+        task.polled.addAll(candidates);
+        task.responded.clear();
+        task.proposals.clear();
+        task.biddingOpen = true;
+        task.cfpSentAt = now;
+        inAuction.addAll(candidates);
+        host.callForProposals(task, candidates);
+    }
+
+    /**
+     * Close the round early once every polled robot has answered
+     */
+    private boolean answered(T task, AID robot, long now) {
+        task.responded.add(robot);
+        if (task.responded.containsAll(task.polled)) {
+            close(task, now);
+        }
+        return true;
+    }
+
+    private void award(T task, AID winner, long now) {
+        task.assigned = true;
+        task.assignee = winner;
+        task.assignedAt = now;
+        Double cost = task.proposals.get(winner);
+        task.assignedCost = cost != null ? cost : Double.MAX_VALUE;
+        robots.markUnavailable(winner);
+        host.award(task, winner);
+
+        // Bids are no longer needed once the task is assigned
+        task.releaseBids();
+    }
+
+    /**
+     * Apply the no-bid policy: re-queue the task with backoff or give up on it
+     */
+    private void noBids(T task, long now) {
+        if (noBidPolicy == CoordinatorAgent.NoBidPolicy.RETRY && task.round < CoordinatorAgent.MAX_CFP_ROUNDS) {
+            long delay = TaskQueue.backoffDelay(task.round, CoordinatorAgent.RETRY_BASE_DELAY_MS,
+                                                CoordinatorAgent.RETRY_MAX_DELAY_MS);
+            pendingTasks.addDelayed(task, task.task.urgency, task.createdAt, now + delay);
+            host.retry(task, delay);
+        } else {
+            host.giveUp(task);
+        }
+    }
+
+    /**
+     * After a re-auction round, challenge the assignee if the best new bid
+     * undercuts it by REASSIGN_MIN_GAIN. The assignee decides (it may have
+     * picked the task up meanwhile); the bidder is held until the answer.
+     */
+    private void challenge(T task) {
+        AID challenger = selectWinner(task.proposals);
+        // The assignee has only got closer since its winning bid, so a bid that does not beat that cannot win
+        double bar = challenger == null ? 0 : task.proposals.get(challenger) + CoordinatorAgent.REASSIGN_MIN_GAIN;
+        if (challenger == null || bar >= task.assignedCost || task.releasePending()) {
+            task.releaseBids();
+            return;
+        }
+        task.challenger = challenger;
+        inAuction.add(challenger);
+        host.challenge(task, challenger, bar);
+    }
+
+    /**
+     * Whether the robot could bid low enough to take the task from its assignee:
+     * no bid is below the cost of the straight-line distance to the pickup
+     */
+    private boolean mayUndercut(AID robot, T task) {
+        RobotIndex.RobotStatus status = robots.get(robot);
+        if (status == null) {
+            return true;
+        }
+        int distance = Math.abs(status.x - task.task.pickupX) + Math.abs(status.y - task.task.pickupY);
+        return TransportAgent.bidCost(distance, status.battery, false) + CoordinatorAgent.REASSIGN_MIN_GAIN <
+                task.assignedCost;
+    }
+}
@@ -0,0 +1,452 @@
+package warehouse;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * TaskCodec - Compact fixed-layout binary payloads for task messages
+ *
+ * Task payload (REQUEST, CFP, ACCEPT_PROPOSAL), big-endian, 18 bytes:
+ *   [0]      format version
+ *   [1..4]   task number
+ *   [5]      item mask (bit i: ItemType with ordinal i)
+ *   [6..7]   pickupX     [8..9]   pickupY
+ *   [10..11] deliveryX   [12..13] deliveryY
+ *   [14..17] urgency
+ *
+ * Proposal payload (PROPOSE), 13 bytes:
+ *   [0]      format version
+ *   [1..4]   task number
+ *   [5..12]  cost (IEEE 754 double)
+ *
+ * Release request payload (REQUEST on the release conversation): the proposal
+ * layout, with the cost the robot must exceed to give the task up (negative:
+ * the order was cancelled, give the task up unless it is loaded)
+ *
+ * Robot status payload (INFORM on the robot-status conversation), 7 bytes:
+ *   [0]      format version
+ *   [1..2]   x            [3..4]   y
+ *   [5]      battery level (percent)
+ *   [6]      flags (bit 0: available for new tasks)
+ *
+ * Charge request payload (REQUEST on the charge conversation): the robot status
+ * layout, with flags bit 0 set when the battery is at or below the threshold
+ *
+ * Charger payload (AGREE on the charge conversation), 5 bytes:
+ *   [0]      format version
+ *   [1..2]   dock x       [3..4]   dock y
+ *
+ * Route request payload (REQUEST on the route conversation), 13 bytes:
+ *   [0]      format version
+ *   [1..2]   fromX        [3..4]   fromY
+ *   [5..6]   toX          [7..8]   toY
+ *   [9..12]  dwell ticks at the target
+ *
+ * Route payload (INFORM on the route conversation), 11 + 4 * cells bytes:
+ *   [0]      format version
+ *   [1..8]   start tick (epoch milliseconds / TransportAgent.MOVE_STEP_MS)
+ *   [9..10]  cell count (0: the target is unreachable)
+ *   [11..]   packed cells, one per tick from the start tick
+ *
+ * Zone load payload (INFORM between coordinators on the zone-load conversation), 11 bytes:
+ *   [0]      format version
+ *   [1..2]   zone
+ *   [3..6]   queued tasks [7..10] idle robots
+ *
+ * Stock payload (REQUEST and INFORM on the stock conversation), 6 + 2 * item types bytes:
+ *   [0]      format version
+ *   [1]      item mask
+ *   [2..3]   x            [4..5]   y
+ *   [6..]    quantity of each item type, by ordinal
+ * A REQUEST reserves an order near (x, y); the INFORM reply is the bin
+ * pickup cell and what it supplies.
+ *
+ * The static field readers work directly on the received byte array, so a
+ * robot answering a CFP does not allocate anything to read the task.
+ */
+public final class TaskCodec {
+
+    public static final byte VERSION = 2;
+    public static final int TASK_SIZE = 18;
+    public static final int PROPOSAL_SIZE = 13;
+    public static final int STATUS_SIZE = 7;
+    public static final int LOAD_SIZE = 11;
+    public static final int CHARGER_SIZE = 5;
+    public static final int ROUTE_REQUEST_SIZE = 13;
+    public static final int ROUTE_HEADER_SIZE = 11;
+    public static final int STOCK_SIZE = 6 + 2 * ItemType.values().length;
+
+    public static final String STATUS_CONVERSATION = "robot-status";
+
+    // Zone coordination: load reports between coordinators, robot moves between zones
+    public static final String LOAD_CONVERSATION = "zone-load";
+    public static final String HANDOFF_CONVERSATION = "zone-handoff";
+
+    // Charging: robot asks (REQUEST), coordinator grants a dock (AGREE) or defers (REFUSE), robot releases it (INFORM)
+    public static final String CHARGE_CONVERSATION = "charge";
+
+    // Traffic control: robot asks for a timed route (REQUEST), traffic agent answers with one (INFORM)
+    public static final String ROUTE_CONVERSATION = "route";
+
+    // Re-auction: coordinator asks the assignee to give up a task it has not picked up yet (REQUEST),
+    // the robot drops it (AGREE) or keeps it (REFUSE, with one of the reasons below)
+    public static final String RELEASE_CONVERSATION = "release";
+    public static final String RELEASE_LOADED = "LOADED";     // Past the drive to pickup
+    public static final String RELEASE_NO_GAIN = "NO_GAIN";   // Still cheaper than the challenger
+    public static final String RELEASE_NO_ROUTE = "NO_ROUTE"; // Pickup unreachable for the robot
+    public static final String RELEASE_UNKNOWN = "UNKNOWN";   // Task not held by the robot
+
+    // Warehouse stock: station reserves an order (REQUEST, order in reply-with), stock agent answers with
+    // the pickup (INFORM) or has nothing in stock (REFUSE); the station takes the units once delivered
+    // (CONFIRM) or releases them (CANCEL)
+    public static final String STOCK_CONVERSATION = "warehouse-stock";
+
+    // Task completion (INFORM) and failure (FAILURE) reports; the conversation ID is the task ID
+    public static final String LIFECYCLE_ONTOLOGY = "task-lifecycle";
+    private static final int FLAG_AVAILABLE = 1;
+    private static final int FLAG_URGENT = 1;
+
+    private TaskCodec() {
+    }
+
+    // ---- Task payloads ----
+
+    public static byte[] encodeTask(TransportTask task) {
+        byte[] b = new byte[TASK_SIZE];
+        b[0] = VERSION;
+        putInt(b, 1, task.taskNumber);
+        b[5] = (byte) task.items;
+        putShort(b, 6, task.pickupX);
+        putShort(b, 8, task.pickupY);
+        putShort(b, 10, task.deliveryX);
+        putShort(b, 12, task.deliveryY);
+        putInt(b, 14, task.urgency);
+        return b;
+    }
+
+    public static TransportTask decodeTask(byte[] b) {
+        checkTask(b);
+        return new TransportTask(taskNumber(b), items(b), pickupX(b), pickupY(b),
+                deliveryX(b), deliveryY(b), urgency(b));
+    }
+
+    /**
+     * Read the task payload of a message, or null if it is not a valid task
+     */
+    public static byte[] taskPayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length == TASK_SIZE && b[0] == VERSION) ? b : null;
+    }
+
+    public static int taskNumber(byte[] b) {
+        return getInt(b, 1);
+    }
+
+    public static int items(byte[] b) {
+        return b[5] & 0xFF;
+    }
+
+    public static int pickupX(byte[] b) {
+        return getShort(b, 6);
+    }
+
+    public static int pickupY(byte[] b) {
+        return getShort(b, 8);
+    }
+
+    public static int deliveryX(byte[] b) {
+        return getShort(b, 10);
+    }
+
+    public static int deliveryY(byte[] b) {
+        return getShort(b, 12);
+    }
+
+    public static int urgency(byte[] b) {
+        return getInt(b, 14);
+    }
+
+    // ---- Proposal payloads ----
+
+    public static byte[] encodeProposal(int taskNumber, double cost) {
+        byte[] b = new byte[PROPOSAL_SIZE];
+        b[0] = VERSION;
+        putInt(b, 1, taskNumber);
+        putLong(b, 5, Double.doubleToLongBits(cost));
+        return b;
+    }
+
+    /**
+     * Read the proposal payload of a message, or null if it is not a valid proposal
+     */
+    public static byte[] proposalPayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length == PROPOSAL_SIZE && b[0] == VERSION) ? b : null;
+    }
+
+    public static double proposalCost(byte[] b) {
+        return Double.longBitsToDouble(getLong(b, 5));
+    }
+
+    // ---- Robot status payloads ----
+
+    public static byte[] encodeStatus(int x, int y, int battery, boolean available) {
+        byte[] b = new byte[STATUS_SIZE];
+        b[0] = VERSION;
+        putShort(b, 1, x);
+        putShort(b, 3, y);
+        b[5] = (byte) Math.max(0, Math.min(100, battery));
+        b[6] = (byte) (available ? FLAG_AVAILABLE : 0);
+        return b;
+    }
+
+    /**
+     * Read the status payload of a message, or null if it is not a valid status
+     */
+    public static byte[] statusPayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length == STATUS_SIZE && b[0] == VERSION) ? b : null;
+    }
+
+    public static int statusX(byte[] b) {
+        return getShort(b, 1);
+    }
+
+    public static int statusY(byte[] b) {
+        return getShort(b, 3);
+    }
+
+    public static int statusBattery(byte[] b) {
+        return b[5];
+    }
+
+    public static boolean statusAvailable(byte[] b) {
+        return (b[6] & FLAG_AVAILABLE) != 0;
+    }
+
+    // ---- Charging payloads ----
+
+    public static byte[] encodeChargeRequest(int x, int y, int battery, boolean urgent) {
+        byte[] b = encodeStatus(x, y, battery, false);
+        b[6] = (byte) (urgent ? FLAG_URGENT : 0);
+        return b;
+    }
+
+    /**
+     * Whether a charge request (read with the status field readers) cannot wait
+     */
+    public static boolean chargeUrgent(byte[] b) {
+        return (b[6] & FLAG_URGENT) != 0;
+    }
+
+    public static byte[] encodeCharger(int x, int y) {
+        byte[] b = new byte[CHARGER_SIZE];
+        b[0] = VERSION;
+        putShort(b, 1, x);
+        putShort(b, 3, y);
+        return b;
+    }
+
+    /**
+     * Read the charger payload of a message, or null if it is not a valid dock grant
+     */
+    public static byte[] chargerPayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length == CHARGER_SIZE && b[0] == VERSION) ? b : null;
+    }
+
+    public static int chargerX(byte[] b) {
+        return getShort(b, 1);
+    }
+
+    public static int chargerY(byte[] b) {
+        return getShort(b, 3);
+    }
+
+    // ---- Route payloads ----
+
+    public static byte[] encodeRouteRequest(int fromX, int fromY, int toX, int toY, int dwellTicks) {
+        byte[] b = new byte[ROUTE_REQUEST_SIZE];
+        b[0] = VERSION;
+        putShort(b, 1, fromX);
+        putShort(b, 3, fromY);
+        putShort(b, 5, toX);
+        putShort(b, 7, toY);
+        putInt(b, 9, dwellTicks);
+        return b;
+    }
+
+    /**
+     * Read the route request payload of a message, or null if it is not a valid route request
+     */
+    public static byte[] routeRequestPayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length == ROUTE_REQUEST_SIZE && b[0] == VERSION) ? b : null;
+    }
+
+    public static int routeFromX(byte[] b) {
+        return getShort(b, 1);
+    }
+
+    public static int routeFromY(byte[] b) {
+        return getShort(b, 3);
+    }
+
+    public static int routeToX(byte[] b) {
+        return getShort(b, 5);
+    }
+
+    public static int routeToY(byte[] b) {
+        return getShort(b, 7);
+    }
+
+    public static int routeDwellTicks(byte[] b) {
+        return getInt(b, 9);
+    }
+
+    /**
+     * Encode a timed route; a null route means the target is unreachable
+     */
+    public static byte[] encodeRoute(long startTick, int[] route) {
+        int count = route == null ? 0 : route.length;
+        byte[] b = new byte[ROUTE_HEADER_SIZE + 4 * count];
+        b[0] = VERSION;
+        putLong(b, 1, startTick);
+        putShort(b, 9, count);
+        for (int i = 0; i < count; i++) {
+            putInt(b, ROUTE_HEADER_SIZE + 4 * i, route[i]);
+        }
+        return b;
+    }
+
+    /**
+     * Read the route payload of a message, or null if it is not a valid route
+     */
+    public static byte[] routePayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length >= ROUTE_HEADER_SIZE && b[0] == VERSION &&
+                b.length == ROUTE_HEADER_SIZE + 4 * routeLength(b)) ? b : null;
+    }
+
+    public static long routeStartTick(byte[] b) {
+        return getLong(b, 1);
+    }
+
+    public static int routeLength(byte[] b) {
+        return getShort(b, 9) & 0xFFFF;
+    }
+
+    public static int routeCell(byte[] b, int i) {
+        return getInt(b, ROUTE_HEADER_SIZE + 4 * i);
+    }
+
+    // ---- Zone load payloads ----
+
+    public static byte[] encodeLoad(int zone, int queued, int idle) {
+        byte[] b = new byte[LOAD_SIZE];
+        b[0] = VERSION;
+        putShort(b, 1, zone);
+        putInt(b, 3, queued);
+        putInt(b, 7, idle);
+        return b;
+    }
+
+    /**
+     * Read the load payload of a message, or null if it is not a valid load report
+     */
+    public static byte[] loadPayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length == LOAD_SIZE && b[0] == VERSION) ? b : null;
+    }
+
+    public static int loadZone(byte[] b) {
+        return getShort(b, 1);
+    }
+
+    public static int loadQueued(byte[] b) {
+        return getInt(b, 3);
+    }
+
+    public static int loadIdle(byte[] b) {
+        return getInt(b, 7);
+    }
+
+    // ---- Stock payloads ----
+
+    public static byte[] encodeStock(int items, int x, int y, int[] quantities) {
+        byte[] b = new byte[STOCK_SIZE];
+        b[0] = VERSION;
+        b[1] = (byte) items;
+        putShort(b, 2, x);
+        putShort(b, 4, y);
+        for (int i = 0; i < quantities.length; i++) {
+            putShort(b, 6 + 2 * i, quantities[i]);
+        }
+        return b;
+    }
+
+    /**
+     * Read the stock payload of a message, or null if it is not a valid stock request or pickup
+     */
+    public static byte[] stockPayload(ACLMessage msg) {
+        byte[] b = msg.getByteSequenceContent();
+        return (b != null && b.length == STOCK_SIZE && b[0] == VERSION) ? b : null;
+    }
+
+    public static int stockItems(byte[] b) {
+        return b[1] & 0xFF;
+    }
+
+    public static int stockX(byte[] b) {
+        return getShort(b, 2);
+    }
+
+    public static int stockY(byte[] b) {
+        return getShort(b, 4);
+    }
+
+    public static int[] stockQuantities(byte[] b) {
+        int[] quantities = new int[ItemType.values().length];
+        for (int i = 0; i < quantities.length; i++) {
+            quantities[i] = getShort(b, 6 + 2 * i);
+        }
+        return quantities;
+    }
+
+    // ---- Primitive helpers ----
+
+    private static void checkTask(byte[] b) {
+        if (b == null || b.length != TASK_SIZE || b[0] != VERSION) {
+            throw new IllegalArgumentException("Not a task payload");
+        }
+    }
+
+    private static void putShort(byte[] b, int off, int v) {
+        b[off] = (byte) (v >> 8);
+        b[off + 1] = (byte) v;
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return (short) ((b[off] << 8) | (b[off + 1] & 0xFF));
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >> 24);
+        b[off + 1] = (byte) (v >> 16);
+        b[off + 2] = (byte) (v >> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return (b[off] << 24) | ((b[off + 1] & 0xFF) << 16) |
+                ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        putInt(b, off, (int) (v >> 32));
+        putInt(b, off + 4, (int) v);
+    }
+
+    private static long getLong(byte[] b, int off) {
+        return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xFFFFFFFFL);
+    }
+}
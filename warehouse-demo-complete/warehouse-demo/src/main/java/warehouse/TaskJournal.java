@@ -0,0 +1,492 @@
+package warehouse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static warehouse.EventLog.Level.*;
+
+/**
+ * TaskJournal - Memory-mapped, append-only journal of a coordinator's open tasks
+ *
+ * Every state change of a task (created, assigned, released, finished) is appended as a
+ * small binary record to a memory-mapped file, so a write is a few buffer
+ * puts and survives a crash of the JVM. After a restart the coordinator
+ * rebuilds its open tasks and task counter by reading the records back in
+ * one sequential pass.
+ *
+ * The journal is written in generations, <name>.<generation>.journal. When a
+ * generation grows past the compaction size, a snapshot of what is still
+ * open is written as the next generation and the old file is deleted, so
+ * the journal stays proportional to the open tasks, not to the run length.
+ *
+ * Record: type (1 byte), body length (2 bytes), body. The body is written
+ * before the type byte, so a record torn by a crash reads as the end of the
+ * journal. Bodies by type:
+ *   SNAPSHOT    counter (4), generation (8)        - first record of every generation
+ *   NAME        id (2), UTF-8 agent name           - ids used by the records below
+ *   CREATED     task (4), counter (4), createdAt (8), requester id (2),
+ *               TaskCodec task payload, UTF-8 request conversation
+ *   ASSIGNED    task (4), assignedAt (8), assignee id (2)
+ *   UNASSIGNED  task (4)                           - released by its robot, queued again
+ *   FINISHED    task (4)
+ * The SNAPSHOT type byte is written last, after the whole snapshot, so an
+ * interrupted compaction leaves the previous generation in charge.
+ *
+ * If the file cannot be grown the journal is marked failed and stops
+ * writing: tasks keep running from memory, but are no longer recoverable.
+ *
+ * Not thread-safe: used from the coordinator's agent thread.
+ */
+public class TaskJournal {
+
+    static final byte SNAPSHOT = 1;
+    static final byte NAME = 2;
+    static final byte CREATED = 3;
+    static final byte ASSIGNED = 4;
+    static final byte FINISHED = 5;
+    static final byte UNASSIGNED = 6;
+
+    private static final int HEADER_SIZE = 3;
+    private static final int SNAPSHOT_SIZE = HEADER_SIZE + 12;
+    static final int INITIAL_MAPPING = 1 << 20;              // Bytes mapped for a new generation, doubled as needed
+    static final long DEFAULT_COMPACT_BYTES = 16L << 20;     // Generation size that triggers a snapshot
+    private static final String SUFFIX = ".journal";
+
+    /**
+     * One open task as recovered from (and kept for) the journal
+     */
+    public static final class Entry {
+        public final int taskNumber;
+        public final long createdAt;
+        public final String requester;     // Agent name (GUID)
+        public final String conversation;  // The station's request conversation
+        public final byte[] task;          // TaskCodec payload
+        public String assignee;            // Null while unassigned
+        public long assignedAt;
+
+        Entry(int taskNumber, long createdAt, String requester, String conversation, byte[] task) {
+            this.taskNumber = taskNumber;
+            this.createdAt = createdAt;
+            this.requester = requester;
+            this.conversation = conversation;
+            this.task = task;
+        }
+    }
+
+    private final File dir;
+    private final String name;
+    private final long compactBytes;
+    private final Map<Integer, Entry> open = new LinkedHashMap<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int counter;
+    private long generation;
+    private File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long recordsRecovered;
+    private long recoveryMs;
+    private boolean failed;   // A remap failed; nothing more is written
+
+    /**
+     * Open the journal in dir for the named coordinator, recovering its open tasks
+     */
+    public static TaskJournal open(File dir, String name) throws IOException {
+        return new TaskJournal(dir, name, DEFAULT_COMPACT_BYTES);
+    }
+
+    TaskJournal(File dir, String name, long compactBytes) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.compactBytes = compactBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + dir);
+        }
+        long start = System.nanoTime();
+        recover();
+        recoveryMs = (System.nanoTime() - start) / 1000000;
+    }
+
+    // ---- Recovery ----
+
+    private void recover() throws IOException {
+        // Newest generation with a complete snapshot wins; everything else is left over
+        List<Long> generations = generations();
+        Collections.sort(generations, Collections.<Long>reverseOrder());
+        for (long candidate : generations) {
+            File candidateFile = generationFile(candidate);
+            RandomAccessFile candidateRaf = new RandomAccessFile(candidateFile, "rw");
+            MappedByteBuffer candidateBuffer = candidateRaf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, Math.max(candidateRaf.length(), INITIAL_MAPPING));
+            if (candidateBuffer.get(0) == SNAPSHOT) {
+                generation = candidate;
+                file = candidateFile;
+                raf = candidateRaf;
+                buffer = candidateBuffer;
+                replay();
+                break;
+            }
+            candidateRaf.close();
+        }
+        for (long other : generations) {
+            if (other != generation) {
+                generationFile(other).delete();
+            }
+        }
+        if (buffer == null) {
+            writeGeneration(1);
+        }
+    }
+
+    private void replay() {
+        counter = buffer.getInt(HEADER_SIZE);
+        int pos = 0;
+        int limit = buffer.capacity();
+        byte[] scratch = new byte[256];
+        while (pos + HEADER_SIZE <= limit) {
+            byte type = buffer.get(pos);
+            int length = buffer.getChar(pos + 1);
+            int body = pos + HEADER_SIZE;
+            if (type == 0 || body + length > limit) {
+                break;
+            }
+            switch (type) {
+                case NAME: {
+                    int id = buffer.getChar(body);
+                    String agent = readString(body + 2, length - 2, scratch);
+                    while (names.size() <= id) {
+                        names.add(null);
+                    }
+                    names.set(id, agent);
+                    nameIds.put(agent, id);
+                    break;
+                }
+                case CREATED: {
+                    int taskNumber = buffer.getInt(body);
+                    counter = Math.max(counter, buffer.getInt(body + 4));
+                    long createdAt = buffer.getLong(body + 8);
+                    String requester = names.get(buffer.getChar(body + 16));
+                    byte[] task = new byte[TaskCodec.TASK_SIZE];
+                    for (int i = 0; i < task.length; i++) {
+                        task[i] = buffer.get(body + 18 + i);
+                    }
+                    int conversationAt = body + 18 + TaskCodec.TASK_SIZE;
+                    String conversation = readString(conversationAt, body + length - conversationAt, scratch);
+                    open.put(taskNumber, new Entry(taskNumber, createdAt, requester,
+                            conversation.isEmpty() ? null : conversation, task));
+                    break;
+                }
+                case ASSIGNED: {
+                    Entry entry = open.get(buffer.getInt(body));
+                    if (entry != null) {
+                        entry.assignedAt = buffer.getLong(body + 4);
+                        entry.assignee = names.get(buffer.getChar(body + 12));
+                    }
+                    break;
+                }
+                case UNASSIGNED: {
+                    Entry entry = open.get(buffer.getInt(body));
+                    if (entry != null) {
+                        entry.assignee = null;
+                        entry.assignedAt = 0;
+                    }
+                    break;
+                }
+                case FINISHED:
+                    open.remove(buffer.getInt(body));
+                    break;
+                default:
+                    break; // SNAPSHOT header
+            }
+            recordsRecovered++;
+            pos = body + length;
+        }
+        position = pos;
+    }
+
+    private String readString(int at, int length, byte[] scratch) {
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(at + i);
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private List<Long> generations() {
+        List<Long> generations = new ArrayList<>();
+        String[] files = dir.list();
+        if (files == null) {
+            return generations;
+        }
+        String prefix = name + ".";
+        for (String f : files) {
+            if (f.startsWith(prefix) && f.endsWith(SUFFIX)) {
+                try {
+                    generations.add(Long.parseLong(f.substring(prefix.length(), f.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return generations;
+    }
+
+    private File generationFile(long gen) {
+        return new File(dir, name + "." + gen + SUFFIX);
+    }
+
+    // ---- Recovered state ----
+
+    /**
+     * Highest task counter ever journaled (0 for a new journal)
+     */
+    public int counter() {
+        return counter;
+    }
+
+    /**
+     * Tasks created but not finished, in creation order
+     */
+    public Collection<Entry> openTasks() {
+        return Collections.unmodifiableCollection(open.values());
+    }
+
+    public long recordsRecovered() {
+        return recordsRecovered;
+    }
+
+    public long recoveryMs() {
+        return recoveryMs;
+    }
+
+    /**
+     * Bytes in the current generation
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Whether writing stopped because the file could not be grown
+     */
+    public boolean failed() {
+        return failed;
+    }
+
+    // ---- Appending ----
+
+    public void created(int taskNumber, int taskCounter, long createdAt, String requester, String conversation,
+                        byte[] task) {
+        Entry entry = new Entry(taskNumber, createdAt, requester, conversation, task);
+        open.put(taskNumber, entry);
+        counter = Math.max(counter, taskCounter);
+        appendCreated(entry, taskCounter);
+    }
+
+    public void assigned(int taskNumber, long assignedAt, String assignee) {
+        Entry entry = open.get(taskNumber);
+        if (entry == null) {
+            return;
+        }
+        entry.assignee = assignee;
+        entry.assignedAt = assignedAt;
+        appendAssigned(entry);
+    }
+
+    public void unassigned(int taskNumber) {
+        Entry entry = open.get(taskNumber);
+        if (entry == null) {
+            return;
+        }
+        entry.assignee = null;
+        entry.assignedAt = 0;
+        appendTaskRecord(UNASSIGNED, taskNumber);
+    }
+
+    public void finished(int taskNumber) {
+        if (open.remove(taskNumber) == null) {
+            return;
+        }
+        appendTaskRecord(FINISHED, taskNumber);
+    }
+
+    /**
+     * Flush the mapped pages to disk and compact if the generation has grown
+     * past the compaction size
+     */
+    public void checkpoint() {
+        buffer.force();
+        if (!failed && position >= compactBytes) {
+            compact();
+        }
+    }
+
+    public void close() {
+        try {
+            buffer.force();
+            raf.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void appendCreated(Entry entry, int taskCounter) {
+        int requesterId = nameId(entry.requester);
+        byte[] conversation = entry.conversation == null ? new byte[0] :
+                entry.conversation.getBytes(StandardCharsets.UTF_8);
+        int length = 18 + TaskCodec.TASK_SIZE + conversation.length;
+        int at = reserve(length);
+        if (at < 0) {
+            return;
+        }
+        int body = at + HEADER_SIZE;
+        buffer.putInt(body, entry.taskNumber);
+        buffer.putInt(body + 4, taskCounter);
+        buffer.putLong(body + 8, entry.createdAt);
+        buffer.putChar(body + 16, (char) requesterId);
+        for (int i = 0; i < TaskCodec.TASK_SIZE; i++) {
+            buffer.put(body + 18 + i, entry.task[i]);
+        }
+        for (int i = 0; i < conversation.length; i++) {
+            buffer.put(body + 18 + TaskCodec.TASK_SIZE + i, conversation[i]);
+        }
+        commit(at, CREATED, length);
+    }
+
+    private void appendTaskRecord(byte type, int taskNumber) {
+        int at = reserve(4);
+        if (at < 0) {
+            return;
+        }
+        buffer.putInt(at + HEADER_SIZE, taskNumber);
+        commit(at, type, 4);
+    }
+
+    private void appendAssigned(Entry entry) {
+        int assigneeId = nameId(entry.assignee);
+        int at = reserve(14);
+        if (at < 0) {
+            return;
+        }
+        buffer.putInt(at + HEADER_SIZE, entry.taskNumber);
+        buffer.putLong(at + HEADER_SIZE + 4, entry.assignedAt);
+        buffer.putChar(at + HEADER_SIZE + 12, (char) assigneeId);
+        commit(at, ASSIGNED, 14);
+    }
+
+    /**
+     * Id of an agent name, journaling a NAME record the first time it is used
+     */
+    private int nameId(String agent) {
+        Integer id = nameIds.get(agent);
+        if (id != null) {
+            return id;
+        }
+        id = names.size();
+        names.add(agent);
+        nameIds.put(agent, id);
+        byte[] bytes = agent.getBytes(StandardCharsets.UTF_8);
+        int at = reserve(2 + bytes.length);
+        if (at < 0) {
+            return id;
+        }
+        buffer.putChar(at + HEADER_SIZE, (char) (int) id);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(at + HEADER_SIZE + 2 + i, bytes[i]);
+        }
+        commit(at, NAME, 2 + bytes.length);
+        return id;
+    }
+
+    /**
+     * Make room for a record with the given body length; returns its position,
+     * or -1 once the journal has failed
+     */
+    private int reserve(int length) {
+        if (failed) {
+            return -1;
+        }
+        int needed = position + HEADER_SIZE + length + 1; // Keep a zero type byte after the last record
+        if (needed > buffer.capacity()) {
+            try {
+                long capacity = buffer.capacity();
+                while (capacity < needed) {
+                    capacity *= 2;
+                }
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                EventLog.log(WARN, name, "JOURNAL_FAILED", file.getName(), e.toString(), position);
+                return -1;
+            }
+        }
+        return position;
+    }
+
+    private void commit(int at, byte type, int length) {
+        buffer.put(at + HEADER_SIZE + length, (byte) 0); // Ends the journal, whatever a torn record left there
+        buffer.putChar(at + 1, (char) length);
+        buffer.put(at, type);
+        position = at + HEADER_SIZE + length;
+    }
+
+    // ---- Compaction ----
+
+    /**
+     * Write the open tasks as the next generation and drop the current one
+     */
+    void compact() {
+        File previous = file;
+        RandomAccessFile previousRaf = raf;
+        try {
+            writeGeneration(generation + 1);
+            previousRaf.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        previous.delete(); // May fail while still mapped on some platforms; recovery ignores it
+    }
+
+    private void writeGeneration(long gen) throws IOException {
+        File nextFile = generationFile(gen);
+        RandomAccessFile nextRaf = new RandomAccessFile(nextFile, "rw");
+        nextRaf.setLength(0);
+        long estimate = SNAPSHOT_SIZE + 128L * (open.size() + names.size()) + 1;
+        long capacity = INITIAL_MAPPING;
+        while (capacity < 2 * estimate) {
+            capacity *= 2;
+        }
+        MappedByteBuffer previousBuffer = buffer;
+        buffer = nextRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        raf = nextRaf;
+        file = nextFile;
+        generation = gen;
+
+        // Header body now, type byte last; names and tasks are journaled afresh
+        buffer.putInt(HEADER_SIZE, counter);
+        buffer.putLong(HEADER_SIZE + 4, gen);
+        position = SNAPSHOT_SIZE;
+        names.clear();
+        nameIds.clear();
+        for (Entry entry : open.values()) {
+            appendCreated(entry, counter);
+            if (entry.assignee != null) {
+                appendAssigned(entry);
+            }
+        }
+        buffer.force();
+        buffer.putChar(1, (char) 12);
+        buffer.put(0, SNAPSHOT);
+        buffer.force();
+        if (previousBuffer != null) {
+            previousBuffer.force();
+        }
+    }
+}
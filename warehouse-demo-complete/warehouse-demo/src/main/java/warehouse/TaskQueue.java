@@ -0,0 +1,115 @@
+package warehouse;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * TaskQueue - Urgency-ordered queue of tasks waiting for a robot, with aging
+ * and retry backoff
+ *
+ * A task's effective priority is its urgency plus one point for every
+ * agingMsPerPoint it has been waiting, so low-urgency work cannot starve.
+ * Because every task ages at the same rate, the ordering between two tasks
+ * never changes and the priority can be stored as a fixed key:
+ *   urgency * agingMsPerPoint - enqueuedAt
+ *
+ * Tasks that found no bidder are parked until their backoff expires, or
+ * until releaseDelayed() is called because a robot became free.
+ */
+public class TaskQueue<T> {
+
+    private static class Entry<T> {
+        final T task;
+        final long key;
+        final long sequence;
+        long notBefore;
+
+        Entry(T task, long key, long sequence, long notBefore) {
+            this.task = task;
+            this.key = key;
+            this.sequence = sequence;
+            this.notBefore = notBefore;
+        }
+    }
+
+    private final long agingMsPerPoint;
+    private final PriorityQueue<Entry<T>> ready = new PriorityQueue<>(
+            Comparator.<Entry<T>>comparingLong(e -> -e.key).thenComparingLong(e -> e.sequence));
+    private final PriorityQueue<Entry<T>> delayed = new PriorityQueue<>(
+            Comparator.<Entry<T>>comparingLong(e -> e.notBefore).thenComparingLong(e -> e.sequence));
+    private long sequence = 0;
+
+    public TaskQueue(long agingMsPerPoint) {
+        this.agingMsPerPoint = agingMsPerPoint;
+    }
+
+    /**
+     * Queue a task for immediate dispatch; enqueuedAt is when it was first
+     * requested, so retries keep the priority they have aged to
+     */
+    public void add(T task, int urgency, long enqueuedAt) {
+        ready.add(new Entry<>(task, key(urgency, enqueuedAt), sequence++, 0));
+    }
+
+    /**
+     * Queue a task that may not be dispatched before notBefore
+     */
+    public void addDelayed(T task, int urgency, long enqueuedAt, long notBefore) {
+        delayed.add(new Entry<>(task, key(urgency, enqueuedAt), sequence++, notBefore));
+    }
+
+    /**
+     * Highest-priority task that may be dispatched now, or null
+     */
+    public T peek(long now) {
+        promote(now);
+        Entry<T> head = ready.peek();
+        return head == null ? null : head.task;
+    }
+
+    public T poll(long now) {
+        promote(now);
+        Entry<T> head = ready.poll();
+        return head == null ? null : head.task;
+    }
+
+    /**
+     * Cancel all pending backoffs, e.g. because a robot just became free
+     */
+    public void releaseDelayed() {
+        while (!delayed.isEmpty()) {
+            ready.add(delayed.poll());
+        }
+    }
+
+    /**
+     * Withdraw a queued task, e.g. because its request was cancelled;
+     * returns false if it was not queued
+     */
+    public boolean remove(T task) {
+        boolean removed = ready.removeIf(e -> e.task == task);
+        return delayed.removeIf(e -> e.task == task) || removed;
+    }
+
+    public int size() {
+        return ready.size() + delayed.size();
+    }
+
+    /**
+     * Exponential backoff for the given attempt (1-based), capped at maxDelay
+     */
+    public static long backoffDelay(int attempt, long baseDelay, long maxDelay) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 30);
+        return Math.min(maxDelay, baseDelay << shift);
+    }
+
+    private void promote(long now) {
+        while (!delayed.isEmpty() && delayed.peek().notBefore <= now) {
+            ready.add(delayed.poll());
+        }
+    }
+
+    private long key(int urgency, long enqueuedAt) {
+        return urgency * agingMsPerPoint - enqueuedAt;
+    }
+}
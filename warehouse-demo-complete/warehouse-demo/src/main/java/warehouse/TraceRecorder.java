@@ -0,0 +1,273 @@
+package warehouse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TraceRecorder - Allocation trace of every task, for replay and run-to-run comparison
+ *
+ * Coordinators record each step of a task's life: the station's REQUEST
+ * (with everything needed to send it again), every CFP round, each
+ * PROPOSE, the ACCEPT and the robot's completion or failure. Unlike the
+ * event log there is no level: when tracing is on, every step is kept.
+ * Records are queued and written by a background thread; when tracing is
+ * off, recording costs one volatile read.
+ *
+ * One tab-separated line per record, absent fields written as "-", after a
+ * "# warehouse-trace 1" header:
+ *   epochMillis  kind  task  agent  peer  value  detail
+ * by kind:
+ *   REQUEST    peer = station, value = urgency, detail = items,pickupX,pickupY,deliveryX,deliveryY
+ *   CFP        value = robots polled, detail = round
+ *   PROPOSE    peer = robot, value = bid cost
+ *   ACCEPT     peer = robot
+ *   COMPLETED  peer = robot
+ *   FAILED     peer = robot (if any), detail = reason
+ * task is the coordinator's task ID and agent the recording coordinator.
+ *
+ * Configuration (system property):
+ *   warehouse.trace.file    output file; tracing is off if unset
+ *
+ * TraceReplay reads traces back with read() and replays or compares them.
+ */
+public final class TraceRecorder {
+
+    public static final String HEADER = "# warehouse-trace 1";
+    public static final String REQUEST = "REQUEST";
+    public static final String CFP = "CFP";
+    public static final String PROPOSE = "PROPOSE";
+    public static final String ACCEPT = "ACCEPT";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private static final long IDLE_PARK_NANOS = 50000000; // Writer poll interval when the queue is empty
+
+    /**
+     * One trace line
+     */
+    public static final class Record {
+        public final long time;
+        public final String kind;
+        public final String task;
+        public final String agent;
+        public final String peer;
+        public final double value;   // NaN if absent
+        public final String detail;
+
+        public Record(long time, String kind, String task, String agent, String peer, double value, String detail) {
+            this.time = time;
+            this.kind = kind;
+            this.task = task;
+            this.agent = agent;
+            this.peer = peer;
+            this.value = value;
+            this.detail = detail;
+        }
+    }
+
+    private static final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<>();
+    private static final Object writerLock = new Object();
+    private static volatile Writer out;
+
+    static {
+        String file = System.getProperty("warehouse.trace.file");
+        if (file != null) {
+            open(file);
+        }
+        Thread writer = new Thread(TraceRecorder::writeLoop, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(TraceRecorder::close, "trace-flush"));
+    }
+
+    private TraceRecorder() {
+    }
+
+    /**
+     * Start recording into the given file (replacing it), ending any earlier trace
+     */
+    public static void open(String file) {
+        synchronized (writerLock) {
+            close();
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                        StandardCharsets.UTF_8), 1 << 16);
+                writer.write(HEADER);
+                writer.write('\n');
+                out = writer;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Write everything recorded so far and stop recording
+     */
+    public static void close() {
+        synchronized (writerLock) {
+            drain();
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                out = null;
+            }
+        }
+    }
+
+    public static boolean enabled() {
+        return out != null;
+    }
+
+    // ---- Recording (agent threads) ----
+
+    public static void record(String kind, String task, String agent, String peer, double value, String detail) {
+        if (out == null) {
+            return;
+        }
+        queue.add(new Record(System.currentTimeMillis(), kind, task, agent, peer, value, detail));
+    }
+
+    public static void record(String kind, String task, String agent, String peer) {
+        record(kind, task, agent, peer, Double.NaN, null);
+    }
+
+    // ---- Writing (background thread) ----
+
+    private static void writeLoop() {
+        while (true) {
+            boolean wrote;
+            synchronized (writerLock) {
+                wrote = drain();
+            }
+            if (!wrote) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Write every queued record; returns false if there was nothing to write.
+     * Called with the writer lock held.
+     */
+    private static boolean drain() {
+        if (queue.isEmpty()) {
+            return false;
+        }
+        StringBuilder line = new StringBuilder(96);
+        Record record;
+        try {
+            while ((record = queue.poll()) != null) {
+                if (out == null) {
+                    continue; // Recorded just before the trace was closed
+                }
+                line.setLength(0);
+                format(line, record);
+                out.write(line.toString());
+            }
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    static void format(StringBuilder line, Record record) {
+        line.append(record.time).append('\t');
+        field(line, record.kind).append('\t');
+        field(line, record.task).append('\t');
+        field(line, record.agent).append('\t');
+        field(line, record.peer).append('\t');
+        if (Double.isNaN(record.value)) {
+            line.append('-');
+        } else if (record.value == Math.rint(record.value)) {
+            line.append((long) record.value);
+        } else {
+            line.append(record.value);
+        }
+        line.append('\t');
+        field(line, record.detail).append('\n');
+    }
+
+    private static StringBuilder field(StringBuilder line, String value) {
+        if (value == null || value.isEmpty()) {
+            return line.append('-');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+        return line;
+    }
+
+    // ---- Reading ----
+
+    /**
+     * Read a trace file; lines that are not records (header, comments, blank) are skipped
+     */
+    public static List<Record> read(String file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] f = line.split("\t", -1);
+                if (f.length < 7) {
+                    throw new IOException("Malformed trace line: " + line);
+                }
+                records.add(new Record(Long.parseLong(f[0]), f[1], absent(f[2]), absent(f[3]), absent(f[4]),
+                        f[5].equals("-") ? Double.NaN : Double.parseDouble(f[5]), absent(f[6])));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Write records as a trace file (used for synthetic load profiles)
+     */
+    public static void write(String file, List<Record> records) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.write('\n');
+            StringBuilder line = new StringBuilder(96);
+            for (Record record : records) {
+                line.setLength(0);
+                format(line, record);
+                writer.write(line.toString());
+            }
+        }
+    }
+
+    /**
+     * REQUEST detail for a task: items,pickupX,pickupY,deliveryX,deliveryY
+     */
+    public static String requestDetail(TransportTask task) {
+        return task.items + "," + task.pickupX + "," + task.pickupY + "," + task.deliveryX + "," + task.deliveryY;
+    }
+
+    /**
+     * Rebuild the task of a REQUEST record (task number 0, as a station sends it)
+     */
+    public static TransportTask requestTask(Record record) {
+        String[] f = record.detail.split(",");
+        return new TransportTask(0, Integer.parseInt(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+                Integer.parseInt(f[3]), Integer.parseInt(f[4]), (int) record.value);
+    }
+
+    private static String absent(String field) {
+        return field.equals("-") ? null : field;
+    }
+}
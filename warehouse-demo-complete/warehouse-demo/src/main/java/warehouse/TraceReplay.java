@@ -0,0 +1,369 @@
+package warehouse;
+
+import jade.core.Agent;
+import jade.core.AID;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.*;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.domain.FIPAException;
+import jade.wrapper.ContainerController;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TraceReplay - Replays recorded or synthetic load on a fresh platform and compares runs
+ *
+ * Modes:
+ *   replay <trace> <outTrace> [robots] [seed] [coordinatorArgs]
+ *     Start an in-process JADE platform with a coordinator, the traffic
+ *     control agent and robots at seeded starting positions, send the
+ *     trace's REQUESTs at their recorded offsets from one stand-in station,
+ *     record the run into outTrace and print it next to the input trace.
+ *     coordinatorArgs are the coordinator's arguments, comma separated
+ *     (e.g. 2000,RETRY,3,BATCH).
+ *   synthetic <outTrace> [requestsPerMinute] [minutes] [seed] [stations]
+ *     Write a seeded load profile (REQUEST records only, Poisson arrivals)
+ *     that replay accepts like a recorded trace.
+ *   diff <baseline> <candidate>
+ *     Compare two traces: throughput, allocation and completion latency,
+ *     CFP rounds and bids per task.
+ *
+ * Record a live run with -Dwarehouse.trace.file=trace.tsv (and -Dwarehouse.seed=N
+ * for reproducible robot positions and station requests), then replay it
+ * against another version or configuration and compare.
+ */
+public class TraceReplay {
+
+    private static final String PORT = "1299";
+    private static final long STARTUP_MS = 3000;        // Robots register and report before the first request
+    static final long DRAIN_TIMEOUT_MS = 120000;        // Wait for outcomes after the last request
+    private static final long SEND_INTERVAL_MS = 20;
+
+    /**
+     * Aggregate allocation performance of one trace
+     */
+    static class Summary {
+        int requests;
+        int assigned;
+        int completed;
+        int failed;
+        long spanMs;               // First request to last outcome
+        final List<Long> allocationLatencies = new ArrayList<>();  // REQUEST -> ACCEPT
+        final List<Long> completionLatencies = new ArrayList<>();  // REQUEST -> COMPLETED
+        int rounds;
+        int bids;
+
+        Summary(List<TraceRecorder.Record> records) {
+            Map<String, Long> requestedAt = new HashMap<>();
+            Set<String> accepted = new HashSet<>();
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            for (TraceRecorder.Record record : records) {
+                switch (record.kind) {
+                    case TraceRecorder.REQUEST:
+                        requests++;
+                        requestedAt.put(record.task, record.time);
+                        first = Math.min(first, record.time);
+                        break;
+                    case TraceRecorder.CFP:
+                        rounds++;
+                        break;
+                    case TraceRecorder.PROPOSE:
+                        bids++;
+                        break;
+                    case TraceRecorder.ACCEPT:
+                        if (accepted.add(record.task)) {
+                            assigned++;
+                            Long at = requestedAt.get(record.task);
+                            if (at != null) {
+                                allocationLatencies.add(record.time - at);
+                            }
+                        }
+                        break;
+                    case TraceRecorder.COMPLETED:
+                        completed++;
+                        last = Math.max(last, record.time);
+                        Long at = requestedAt.get(record.task);
+                        if (at != null) {
+                            completionLatencies.add(record.time - at);
+                        }
+                        break;
+                    case TraceRecorder.FAILED:
+                        failed++;
+                        last = Math.max(last, record.time);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            spanMs = first == Long.MAX_VALUE || last < first ? 0 : last - first;
+            Collections.sort(allocationLatencies);
+            Collections.sort(completionLatencies);
+        }
+
+        double throughputPerHour() {
+            return spanMs == 0 ? Double.NaN : completed * 3600000.0 / spanMs;
+        }
+    }
+
+    /**
+     * Stand-in station: sends every REQUEST of the trace at its offset from the
+     * first one and counts the outcomes the coordinator relays back
+     */
+    static class ReplayAgent extends Agent {
+        private final List<TraceRecorder.Record> requests;
+        private final CountDownLatch outcomes;
+        private ZoneDirectory coordinators;
+        private long startedAt;
+        private long firstRequestAt;
+        private int next = 0;
+
+        ReplayAgent(List<TraceRecorder.Record> requests, CountDownLatch outcomes) {
+            this.requests = requests;
+            this.outcomes = outcomes;
+        }
+
+        protected void setup() {
+            // Send requests as they fall due
+            addBehaviour(new TickerBehaviour(this, SEND_INTERVAL_MS) {
+                protected void onTick() {
+                    sendDue();
+                    if (next == requests.size()) {
+                        stop();
+                    }
+                }
+            });
+
+            // Count completions and failures relayed by the coordinator
+            addBehaviour(new CyclicBehaviour() {
+                public void action() {
+                    MessageTemplate mt = MessageTemplate.and(
+                            MessageTemplate.MatchOntology(TaskCodec.LIFECYCLE_ONTOLOGY),
+                            MessageTemplate.or(
+                                    MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                                    MessageTemplate.MatchPerformative(ACLMessage.FAILURE))
+                    );
+                    ACLMessage msg = receive(mt);
+                    if (msg != null) {
+                        outcomes.countDown();
+                    } else {
+                        block();
+                    }
+                }
+            });
+        }
+
+        private void sendDue() {
+            if (coordinators == null) {
+                try {
+                    coordinators = ZoneDirectory.search(this);
+                } catch (FIPAException e) {
+                    e.printStackTrace();
+                }
+                if (coordinators == null || requests.isEmpty()) {
+                    return;
+                }
+                startedAt = System.currentTimeMillis();
+                firstRequestAt = requests.get(0).time;
+            }
+            long offset = System.currentTimeMillis() - startedAt;
+            int width = PathPlanner.shared().getMap().width();
+            while (next < requests.size() && requests.get(next).time - firstRequestAt <= offset) {
+                TraceRecorder.Record record = requests.get(next++);
+                TransportTask task = TraceRecorder.requestTask(record);
+                AID coordinator = coordinators.coordinatorFor(task.pickupX, width);
+                ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+                msg.addReceiver(coordinator);
+                msg.setByteSequenceContent(TaskCodec.encodeTask(task));
+                msg.setConversationId("replay-" + record.task);
+                send(msg);
+            }
+        }
+    }
+
+    static void replay(String traceFile, String outFile, int robots, long seed, String[] coordinatorArgs)
+            throws Exception {
+        List<TraceRecorder.Record> input = TraceRecorder.read(traceFile);
+        List<TraceRecorder.Record> requests = new ArrayList<>();
+        for (TraceRecorder.Record record : input) {
+            if (TraceRecorder.REQUEST.equals(record.kind)) {
+                requests.add(record);
+            }
+        }
+        requests.sort(Comparator.comparingLong(r -> r.time));
+        if (requests.isEmpty()) {
+            System.out.println("No requests in " + traceFile);
+            return;
+        }
+        long traceMs = requests.get(requests.size() - 1).time - requests.get(0).time;
+        System.out.println("Replaying " + requests.size() + " requests over " + traceMs / 1000 + " s with " +
+                robots + " robots (seed " + seed + ")");
+
+        TraceRecorder.open(outFile);
+        Runtime runtime = Runtime.instance();
+        runtime.setCloseVM(false);
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.LOCAL_PORT, PORT);
+        profile.setParameter(Profile.NO_MTP, "true");
+        profile.setParameter(Profile.GUI, "false");
+        ContainerController container = runtime.createMainContainer(profile);
+
+        container.createNewAgent("coordinator", CoordinatorAgent.class.getName(), coordinatorArgs).start();
+        container.createNewAgent("traffic", TrafficControlAgent.class.getName(), new Object[0]).start();
+        WarehouseMap map = PathPlanner.shared().getMap();
+        Random random = new Random(seed);
+        for (int i = 1; i <= robots; i++) {
+            container.createNewAgent("robot" + i, TransportAgent.class.getName(),
+                    new Object[]{random.nextInt(map.width()), random.nextInt(map.height())}).start();
+        }
+        Thread.sleep(STARTUP_MS);
+
+        CountDownLatch outcomes = new CountDownLatch(requests.size());
+        container.acceptNewAgent("replay", new ReplayAgent(requests, outcomes)).start();
+        if (!outcomes.await(traceMs + DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            System.out.println(outcomes.getCount() + " requests still open at the drain timeout");
+        }
+
+        TraceRecorder.close();
+        container.kill();
+        runtime.shutDown();
+        diff(traceFile, outFile);
+    }
+
+    static void synthetic(String outFile, double perMinute, long minutes, long seed, int stations)
+            throws IOException {
+        Random random = new Random(seed);
+        WarehouseMap map = PathPlanner.shared().getMap();
+        int[] deliveryCells = new int[stations];
+        for (int i = 0; i < stations; i++) {
+            deliveryCells[i] = map.nearestFreeCell(random.nextInt(map.width()), random.nextInt(map.height()));
+        }
+        int allItems = (1 << ItemType.values().length) - 1;
+        double meanGapMs = 60000.0 / perMinute;
+        List<TraceRecorder.Record> records = new ArrayList<>();
+        long time = 0;
+        while (true) {
+            time += (long) (-Math.log(1 - random.nextDouble()) * meanGapMs);
+            if (time >= minutes * 60000) {
+                break;
+            }
+            int station = random.nextInt(stations);
+            TransportTask task = new TransportTask(0, 1 + random.nextInt(allItems),
+                    random.nextInt(map.width()), random.nextInt(map.height()),
+                    map.cellX(deliveryCells[station]), map.cellY(deliveryCells[station]), random.nextInt(31));
+            records.add(new TraceRecorder.Record(time, TraceRecorder.REQUEST, "SYN-" + (records.size() + 1),
+                    "synthetic", "station" + (station + 1), task.urgency, TraceRecorder.requestDetail(task)));
+        }
+        TraceRecorder.write(outFile, records);
+        System.out.println("Wrote " + records.size() + " requests over " + minutes + " min to " + outFile);
+    }
+
+    static void diff(String baselineFile, String candidateFile) throws IOException {
+        Summary a = new Summary(TraceRecorder.read(baselineFile));
+        Summary b = new Summary(TraceRecorder.read(candidateFile));
+
+        System.out.println("========================================");
+        System.out.println("Trace comparison");
+        System.out.println("========================================");
+        System.out.println("Baseline:  " + baselineFile);
+        System.out.println("Candidate: " + candidateFile);
+        System.out.printf("%-34s %12s %12s %9s%n", "", "baseline", "candidate", "change");
+        row("Requests", a.requests, b.requests);
+        row("Assigned", a.assigned, b.assigned);
+        row("Completed", a.completed, b.completed);
+        row("Failed", a.failed, b.failed);
+        row("Throughput (tasks per hour)", a.throughputPerHour(), b.throughputPerHour());
+        row("Allocation latency mean (ms)", mean(a.allocationLatencies), mean(b.allocationLatencies));
+        row("Allocation latency p50 (ms)", percentile(a.allocationLatencies, 0.50),
+                percentile(b.allocationLatencies, 0.50));
+        row("Allocation latency p95 (ms)", percentile(a.allocationLatencies, 0.95),
+                percentile(b.allocationLatencies, 0.95));
+        row("Completion latency mean (ms)", mean(a.completionLatencies), mean(b.completionLatencies));
+        row("Completion latency p50 (ms)", percentile(a.completionLatencies, 0.50),
+                percentile(b.completionLatencies, 0.50));
+        row("Completion latency p95 (ms)", percentile(a.completionLatencies, 0.95),
+                percentile(b.completionLatencies, 0.95));
+        row("CFP rounds per request", ratio(a.rounds, a.requests), ratio(b.rounds, b.requests));
+        row("Bids per request", ratio(a.bids, a.requests), ratio(b.bids, b.requests));
+    }
+
+    private static void row(String label, double baseline, double candidate) {
+        String change = Double.isNaN(baseline) || Double.isNaN(candidate) || baseline == 0 ? "-"
+                : String.format("%+.1f%%", 100.0 * (candidate - baseline) / baseline);
+        System.out.printf("%-34s %12s %12s %9s%n", label, number(baseline), number(candidate), change);
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value)) {
+            return "-";
+        }
+        return value == Math.rint(value) ? Long.toString((long) value) : String.format("%.2f", value);
+    }
+
+    private static double ratio(int count, int requests) {
+        return requests == 0 ? Double.NaN : (double) count / requests;
+    }
+
+    private static double mean(List<Long> sorted) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        long sum = 0;
+        for (long sample : sorted) {
+            sum += sample;
+        }
+        return Math.rint((double) sum / sorted.size());
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "";
+        switch (mode) {
+            case "replay":
+                if (args.length < 3) {
+                    break;
+                }
+                replay(args[1], args[2],
+                        args.length > 3 ? Integer.parseInt(args[3]) : 4,
+                        args.length > 4 ? Long.parseLong(args[4]) : 42,
+                        args.length > 5 ? args[5].split(",") : new String[0]);
+                System.exit(0);
+                return;
+            case "synthetic":
+                if (args.length < 2) {
+                    break;
+                }
+                synthetic(args[1],
+                        args.length > 2 ? Double.parseDouble(args[2]) : 6,
+                        args.length > 3 ? Long.parseLong(args[3]) : 5,
+                        args.length > 4 ? Long.parseLong(args[4]) : 42,
+                        args.length > 5 ? Integer.parseInt(args[5]) : 2);
+                return;
+            case "diff":
+                if (args.length < 3) {
+                    break;
+                }
+                diff(args[1], args[2]);
+                return;
+            default:
+                break;
+        }
+        System.out.println("Usage: java -cp jade.jar;classes warehouse.TraceReplay replay <trace> <outTrace> " +
+                "[robots] [seed] [coordinatorArgs]");
+        System.out.println("       java -cp jade.jar;classes warehouse.TraceReplay synthetic <outTrace> " +
+                "[requestsPerMinute] [minutes] [seed] [stations]");
+        System.out.println("       java -cp jade.jar;classes warehouse.TraceReplay diff <baseline> <candidate>");
+    }
+}
@@ -0,0 +1,136 @@
+package warehouse;
+
+import jade.core.Agent;
+import jade.core.behaviours.*;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.*;
+import jade.domain.FIPAException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static warehouse.EventLog.Level.*;
+
+/**
+ * TrafficControlAgent - Plans collision-free timed routes for the robot fleet
+ *
+ * Responsibilities:
+ * - Own the space-time reservation table of the warehouse floor
+ * - Answer each robot's route request with a timed route around the racks
+ *   and around every route granted before it (cooperative A*)
+ * - Hand out short yield plans when a target is blocked, so robots wait
+ *   or step aside and ask again instead of deadlocking
+ * - Drop reservations once their ticks have passed
+ * - Publish route, wait and yield counts as metrics (JMX)
+ *
+ * Ticks are wall-clock based (epoch milliseconds / TransportAgent.MOVE_STEP_MS),
+ * so robots on other containers need roughly synchronized clocks. Robots
+ * that find no traffic agent fall back to planning on their own.
+ */
+public class TrafficControlAgent extends Agent {
+
+    static final String SERVICE_TYPE = "traffic-control";
+    private static final long EXPIRE_INTERVAL_MS = 1000;
+
+    private final PathPlanner planner = PathPlanner.shared();
+    private ReservationTable reservations;
+
+    // Metrics (see MetricsRegistry)
+    private MetricsRegistry metrics;
+    private AtomicLong routesPlanned;
+    private AtomicLong yieldPlans;
+    private AtomicLong unreachable;
+
+    protected void setup() {
+        reservations = new ReservationTable(planner.getMap());
+        EventLog.log(INFO, getLocalName(), "READY", "TrafficControlAgent");
+
+        registerService();
+
+        metrics = MetricsRegistry.register("TrafficControlAgent", getLocalName());
+        routesPlanned = metrics.counter("routesPlanned");
+        yieldPlans = metrics.counter("yieldPlans");
+        unreachable = metrics.counter("unreachable");
+
+        // One behavior reads the mailbox: route requests
+        addBehaviour(new MessageDispatcher(this, metrics)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.REQUEST),
+                        MessageTemplate.MatchConversationId(TaskCodec.ROUTE_CONVERSATION)), this::handleRouteRequest));
+
+        // Periodically forget past reservations and sample the table into metrics gauges
+        addBehaviour(new TickerBehaviour(this, EXPIRE_INTERVAL_MS) {
+            protected void onTick() {
+                reservations.expire(currentTick());
+                metrics.gauge("reservations").set(reservations.size());
+                metrics.gauge("waitTicks").set(reservations.waitTicks());
+                metrics.gauge("mailboxDepth").set(getCurQueueSize());
+            }
+        });
+    }
+
+    static long currentTick() {
+        return System.currentTimeMillis() / TransportAgent.MOVE_STEP_MS;
+    }
+
+    private void registerService() {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE_TYPE);
+        sd.setName("warehouse-traffic-control");
+        dfd.addServices(sd);
+        try {
+            DFService.register(this, dfd);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Plan and reserve a route for a request, starting at the
+     * next tick from the robot's reported cell
+     */
+    private boolean handleRouteRequest(ACLMessage msg) {
+        byte[] request = TaskCodec.routeRequestPayload(msg);
+        if (request == null) {
+            EventLog.log(WARN, getLocalName(), "MALFORMED_ROUTE_REQUEST", msg.getSender().getLocalName());
+            return false;
+        }
+        WarehouseMap map = planner.getMap();
+        int from = map.nearestFreeCell(TaskCodec.routeFromX(request), TaskCodec.routeFromY(request));
+        int to = map.nearestFreeCell(TaskCodec.routeToX(request), TaskCodec.routeToY(request));
+        long startTick = currentTick() + 1;
+        long yieldsBefore = reservations.yields();
+        int[] route = from < 0 || to < 0 ? null :
+                reservations.plan(msg.getSender(), from, to, startTick, TaskCodec.routeDwellTicks(request));
+
+        ACLMessage reply = msg.createReply();
+        reply.setPerformative(ACLMessage.INFORM);
+        reply.setByteSequenceContent(TaskCodec.encodeRoute(startTick, route));
+        send(reply);
+
+        if (route == null) {
+            unreachable.incrementAndGet();
+            EventLog.log(WARN, getLocalName(), "NO_ROUTE", msg.getSender().getLocalName(),
+                    TaskCodec.routeToX(request), TaskCodec.routeToY(request));
+        } else if (reservations.yields() > yieldsBefore) {
+            yieldPlans.incrementAndGet();
+            EventLog.log(DEBUG, getLocalName(), "YIELD", msg.getSender().getLocalName(), route.length);
+        } else {
+            routesPlanned.incrementAndGet();
+            EventLog.log(DEBUG, getLocalName(), "ROUTE", msg.getSender().getLocalName(), route.length);
+        }
+        return true;
+    }
+
+    protected void takeDown() {
+        try {
+            DFService.deregister(this);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+        metrics.unregister();
+        EventLog.log(INFO, getLocalName(), "TERMINATED", null);
+    }
+}
@@ -0,0 +1,1059 @@
+package warehouse;
+
+import jade.core.Agent;
+import jade.core.AID;
+import jade.core.behaviours.*;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.*;
+import jade.domain.FIPAException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static warehouse.EventLog.Level.*;
+
+/**
+ * TransportAgent - Represents an autonomous transport robot
+ *
+ * Implements BDI-inspired architecture:
+ * - Beliefs: current location, battery level, cargo status
+ * - Desires: complete assigned tasks, maintain battery
+ * - Intentions: execute transport plan, avoid obstacles, recharge at a dock
+ *   during idle windows (or as soon as the battery runs low)
+ */
+public class TransportAgent extends Agent {
+
+    // Beliefs (agent state)
+    private int locationX;
+    private int locationY;
+    private int batteryLevel = 100; // Percentage
+    private boolean hasCargo = false;
+    private String currentTask = null;
+    private AID taskOwner; // Coordinator that assigned the current task
+    private TransportBehaviour transport; // Job in progress, null when idle
+    private final Deque<QueuedTask> taskQueue = new ArrayDeque<>(); // Committed follow-up jobs
+    private int maxQueuedTasks = DEFAULT_QUEUED_TASKS;
+    private AID coordinator; // Coordinator of the zone this robot currently works for
+    private boolean zoned = false;
+    private boolean chargeRequested = false; // Waiting for the coordinator to grant a dock
+    private ChargeBehaviour charging;        // Driving to or charging at a dock, null otherwise
+    private long idleSince = System.currentTimeMillis();
+    private AID traffic;      // Traffic control agent handing out timed routes, null to plan alone
+    private long trafficSearchedAt;
+    private Leg activeLeg;    // Leg currently being driven, the target of route replies
+    private int routeRequests = 0;
+
+    // Metrics (see MetricsRegistry)
+    private MetricsRegistry metrics;
+    private AtomicLong proposalsSent;
+    private AtomicLong refusalsSent;
+    private AtomicLong tasksCompleted;
+    private AtomicLong tasksFailed;
+    private AtomicLong tasksReleased;
+    private AtomicLong charges;
+    private long taskStartedAt;
+    private long busyMs;
+
+    // Constants
+    static final int BATTERY_THRESHOLD = 20;
+    static final long BATTERY_DRAIN_INTERVAL_MS = 5000;
+    static final int BATTERY_DRAIN = 2; // Percent per interval while on a task
+    private static final long STATUS_INTERVAL_MS = 2000;
+    static final int DEFAULT_QUEUED_TASKS = 1; // Follow-up jobs a busy robot may commit to
+
+    // Charging: a robot idle for a while below the opportunistic level asks for a dock,
+    // one at or below the threshold asks right away
+    static final int OPPORTUNISTIC_CHARGE_LEVEL = 60;
+    static final long IDLE_BEFORE_CHARGE_MS = 4000;
+    static final long CHARGE_MS_PER_PERCENT = 400;
+    static final long CHARGE_CHECK_MS = 2000;
+
+    // Transport timing: one grid cell per step, plus docking and handling pauses
+    static final long MOVE_STEP_MS = 200;
+    static final long DOCKING_MS = 1000;
+    static final long HANDLING_MS = 500;
+
+    // Traffic control: how long to wait for a timed route before driving on the
+    // robot's own plan, and how often to look for a traffic agent when there is none
+    static final long ROUTE_TIMEOUT_MS = 2000;
+    static final long TRAFFIC_SEARCH_INTERVAL_MS = 10000;
+
+    // Re-auction: heldTaskCost results for a task this robot cannot give up at a price
+    static final double HELD_LOADED = -1;   // Past the drive to pickup
+    static final double HELD_UNKNOWN = -2;  // Not held here
+    static final double HELD_NO_ROUTE = -3; // Pickup unreachable
+
+    /**
+     * Stages of a transport job, executed one tick at a time
+     */
+    private enum TransportStage { TO_PICKUP, AT_PICKUP, LOADED, TO_DELIVERY, AT_DELIVERY, UNLOADED, NO_ROUTE }
+
+    /**
+     * Whether a robot should ask for a dock now: 0 = no, 1 = in an idle window, 2 = urgently
+     */
+    static int chargeNeed(int batteryLevel, long idleMs) {
+        if (batteryLevel <= BATTERY_THRESHOLD) {
+            return 2;
+        }
+        return batteryLevel < OPPORTUNISTIC_CHARGE_LEVEL && idleMs >= IDLE_BEFORE_CHARGE_MS ? 1 : 0;
+    }
+
+    /**
+     * An accepted job waiting for the current one to finish
+     */
+    private static class QueuedTask {
+        final String taskId;
+        final AID owner;
+        final int pickupX;
+        final int pickupY;
+        final int deliveryX;
+        final int deliveryY;
+
+        QueuedTask(String taskId, AID owner, byte[] task) {
+            this.taskId = taskId;
+            this.owner = owner;
+            this.pickupX = TaskCodec.pickupX(task);
+            this.pickupY = TaskCodec.pickupY(task);
+            this.deliveryX = TaskCodec.deliveryX(task);
+            this.deliveryY = TaskCodec.deliveryY(task);
+        }
+    }
+
+    // Route planning on the shared warehouse occupancy grid
+    private final PathPlanner planner = PathPlanner.shared();
+
+    protected void setup() {
+        // Initialize random starting position
+        Object[] args = getArguments();
+        if (args != null && args.length >= 2) {
+            locationX = Integer.parseInt(args[0].toString());
+            locationY = Integer.parseInt(args[1].toString());
+        } else {
+            Random rand = AgentRandom.forAgent(getLocalName());
+            locationX = rand.nextInt(planner.getMap().width());
+            locationY = rand.nextInt(planner.getMap().height());
+        }
+        if (args != null && args.length >= 3) {
+            maxQueuedTasks = Integer.parseInt(args[2].toString());
+        }
+
+        // Never start inside a rack
+        WarehouseMap map = planner.getMap();
+        int start = map.nearestFreeCell(locationX, locationY);
+        locationX = map.cellX(start);
+        locationY = map.cellY(start);
+
+        EventLog.log(INFO, getLocalName(), "READY", "TransportAgent", locationX, locationY);
+
+        // Register with Directory Facilitator
+        registerService();
+
+        metrics = MetricsRegistry.register("TransportAgent", getLocalName());
+        proposalsSent = metrics.counter("proposalsSent");
+        refusalsSent = metrics.counter("refusalsSent");
+        tasksCompleted = metrics.counter("tasksCompleted");
+        tasksFailed = metrics.counter("tasksFailed");
+        tasksReleased = metrics.counter("tasksReleased");
+        charges = metrics.counter("charges");
+
+        // One behavior reads the mailbox and routes each message to its handler:
+        // CFPs, task awards, release requests, zone handoffs, dock grants and timed routes
+        addBehaviour(new MessageDispatcher(this, metrics)
+                .route(MessageTemplate.MatchPerformative(ACLMessage.CFP), this::handleCfp)
+                .route(MessageTemplate.or(
+                        MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL),
+                        MessageTemplate.MatchPerformative(ACLMessage.REJECT_PROPOSAL)), this::handleAward)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.REQUEST),
+                        MessageTemplate.MatchConversationId(TaskCodec.RELEASE_CONVERSATION)), this::handleRelease)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.REQUEST),
+                        MessageTemplate.MatchConversationId(TaskCodec.HANDOFF_CONVERSATION)), this::handleHandoff)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchConversationId(TaskCodec.CHARGE_CONVERSATION),
+                        MessageTemplate.or(
+                                MessageTemplate.MatchPerformative(ACLMessage.AGREE),
+                                MessageTemplate.MatchPerformative(ACLMessage.REFUSE))), this::handleChargeReply)
+                .route(MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                        MessageTemplate.MatchConversationId(TaskCodec.ROUTE_CONVERSATION)), this::handleRoute));
+
+        // Periodically decide whether to ask for a dock
+        addBehaviour(new TickerBehaviour(this, CHARGE_CHECK_MS) {
+            protected void onTick() {
+                planCharge();
+            }
+        });
+
+        // Add behavior to simulate battery consumption
+        addBehaviour(new TickerBehaviour(this, BATTERY_DRAIN_INTERVAL_MS) {
+            protected void onTick() {
+                if (currentTask != null && batteryLevel > 0) {
+                    batteryLevel -= BATTERY_DRAIN;
+                    if (batteryLevel < BATTERY_THRESHOLD) {
+                        EventLog.log(WARN, getLocalName(), "BATTERY_LOW", currentTask, batteryLevel);
+                    }
+                }
+            }
+        });
+
+        // Periodically report position and availability to the coordinator
+        addBehaviour(new TickerBehaviour(this, STATUS_INTERVAL_MS) {
+            protected void onTick() {
+                reportStatus();
+            }
+        });
+
+        // Periodically sample battery, mailbox and busy time into metrics gauges
+        addBehaviour(new TickerBehaviour(this, MetricsRegistry.SAMPLE_INTERVAL_MS) {
+            protected void onTick() {
+                long busy = busyMs + (currentTask != null ? System.currentTimeMillis() - taskStartedAt : 0);
+                metrics.gauge("battery").set(batteryLevel);
+                metrics.gauge("mailboxDepth").set(getCurQueueSize());
+                metrics.gauge("busyMs").set(busy);
+            }
+        });
+    }
+
+    /**
+     * Work for the coordinator of the zone the robot is in, telling the previous
+     * one that it left
+     */
+    private void findCoordinator() {
+        try {
+            ZoneDirectory directory = ZoneDirectory.search(this);
+            if (directory == null) {
+                return;
+            }
+            zoned = directory.zones() > 1;
+            AID zoneCoordinator = directory.coordinatorFor(locationX, planner.getMap().width());
+            if (coordinator != null && !coordinator.equals(zoneCoordinator)) {
+                ACLMessage leaving = new ACLMessage(ACLMessage.INFORM);
+                leaving.addReceiver(coordinator);
+                leaving.setConversationId(TaskCodec.HANDOFF_CONVERSATION);
+                send(leaving);
+                EventLog.log(INFO, getLocalName(), "ZONE_CHANGED", zoneCoordinator.getLocalName());
+            }
+            coordinator = zoneCoordinator;
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Switch to another zone's coordinator when the current one hands
+     * this robot over; a busy robot ignores the handoff and keeps reporting here
+     */
+    private boolean handleHandoff(ACLMessage msg) {
+        if (currentTask == null && isAvailable() && msg.getContent() != null) {
+            coordinator = new AID(msg.getContent(), AID.ISGUID);
+            EventLog.log(INFO, getLocalName(), "HANDED_OFF", coordinator.getLocalName());
+        }
+        reportStatus();
+        return true;
+    }
+
+    /**
+     * Whether the robot bids on new work: idle, or busy with room in its task queue
+     */
+    private boolean isAvailable() {
+        return batteryLevel > BATTERY_THRESHOLD && !chargeRequested && charging == null &&
+                (currentTask == null || taskQueue.size() < maxQueuedTasks);
+    }
+
+    /**
+     * Send current position, battery and availability to the coordinator
+     */
+    private void reportStatus() {
+        if (coordinator == null) {
+            findCoordinator();
+            if (coordinator == null) {
+                return;
+            }
+        }
+        ACLMessage status = new ACLMessage(ACLMessage.INFORM);
+        status.addReceiver(coordinator);
+        status.setConversationId(TaskCodec.STATUS_CONVERSATION);
+        status.setByteSequenceContent(TaskCodec.encodeStatus(locationX, locationY, batteryLevel, isAvailable()));
+        send(status);
+    }
+
+    private void registerService() {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("transport-service");
+        sd.setName(getLocalName());
+        dfd.addServices(sd);
+        try {
+            DFService.register(this, dfd);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Respond to a Call For Proposals; a CFP without a valid task is stale
+     */
+    private boolean handleCfp(ACLMessage msg) {
+        if (isAvailable()) {
+            // Read the fields straight from the binary task payload
+            byte[] task = TaskCodec.taskPayload(msg);
+            if (task == null) {
+                return false;
+            }
+            String taskId = msg.getConversationId();
+
+            // Calculate cost based on distance and battery
+            double cost = calculateCost(task);
+            if (cost < 0) {
+                refusalsSent.incrementAndGet();
+                ACLMessage refuse = msg.createReply();
+                refuse.setPerformative(ACLMessage.REFUSE);
+                refuse.setContent("UNREACHABLE");
+                send(refuse);
+                return true;
+            }
+
+            // Send proposal
+            ACLMessage proposal = msg.createReply();
+            proposal.setPerformative(ACLMessage.PROPOSE);
+            proposal.setByteSequenceContent(
+                    TaskCodec.encodeProposal(TaskCodec.taskNumber(task), cost));
+            send(proposal);
+            proposalsSent.incrementAndGet();
+
+            EventLog.log(DEBUG, getLocalName(), "PROPOSED", taskId, null,
+                    EventLog.NONE, EventLog.NONE, cost);
+        } else {
+            // Refuse if busy or low battery
+            refusalsSent.incrementAndGet();
+            ACLMessage refuse = msg.createReply();
+            refuse.setPerformative(ACLMessage.REFUSE);
+            refuse.setContent("BUSY or LOW_BATTERY");
+            send(refuse);
+        }
+        return true;
+    }
+
+    /**
+     * Bid cost for the task, or -1 if there is no route to its pickup. A busy
+     * robot bids from where and when its committed work ends. A job that
+     * would leave the battery below the threshold also pays for the charge
+     * the robot will need right after it.
+     */
+    private double calculateCost(byte[] task) {
+        int pickupX = TaskCodec.pickupX(task);
+        int pickupY = TaskCodec.pickupY(task);
+        if (currentTask == null) {
+            return jobCost(planner, locationX, locationY, batteryLevel, hasCargo, pickupX, pickupY,
+                           TaskCodec.deliveryX(task), TaskCodec.deliveryY(task));
+        }
+        int ticks = transport.remainingTicks();
+        int endX = transport.deliveryX;
+        int endY = transport.deliveryY;
+        for (QueuedTask queued : taskQueue) {
+            ticks += jobTicks(planner, endX, endY, queued.pickupX, queued.pickupY, queued.deliveryX, queued.deliveryY);
+            endX = queued.deliveryX;
+            endY = queued.deliveryY;
+        }
+        return chainedJobCost(planner, ticks, endX, endY, batteryLevel, pickupX, pickupY,
+                              TaskCodec.deliveryX(task), TaskCodec.deliveryY(task));
+    }
+
+    /**
+     * Bid of an idle robot at (fromX, fromY) for a whole job, charge included,
+     * or -1 if there is no route to the pickup
+     */
+    static double jobCost(PathPlanner planner, int fromX, int fromY, int batteryLevel, boolean hasCargo,
+                          int pickupX, int pickupY, int deliveryX, int deliveryY) {
+        double cost = calculateCost(planner, fromX, fromY, batteryLevel, hasCargo, pickupX, pickupY);
+        if (cost < 0) {
+            return -1;
+        }
+        int ticks = jobTicks(planner, fromX, fromY, pickupX, pickupY, deliveryX, deliveryY);
+        return cost + chargeCost(batteryLevel, ticks * MOVE_STEP_MS);
+    }
+
+    /**
+     * Bid for a job started at (endX, endY) once ticksAhead of committed work
+     * are done, or -1 if there is no route to the pickup
+     */
+    static double chainedJobCost(PathPlanner planner, int ticksAhead, int endX, int endY, int batteryLevel,
+                                 int pickupX, int pickupY, int deliveryX, int deliveryY) {
+        int distance = planner.pathLength(endX, endY, pickupX, pickupY);
+        if (distance < 0) {
+            return -1;
+        }
+        int jobTicks = jobTicks(planner, endX, endY, pickupX, pickupY, deliveryX, deliveryY);
+        return chainedBidCost(ticksAhead, distance, batteryLevel) +
+                chargeCost(batteryAfter(batteryLevel, ticksAhead * MOVE_STEP_MS), jobTicks * MOVE_STEP_MS);
+    }
+
+    /**
+     * What a robot still driving to a task's pickup would bid for it now
+     */
+    static double drivingTaskCost(int distanceToPickup, int batteryLevel, long remainingMs) {
+        return bidCost(distanceToPickup, batteryLevel, false) + chargeCost(batteryLevel, remainingMs);
+    }
+
+    /**
+     * Extra cost of a job of the given length: none while the battery lasts past
+     * it, otherwise the ticks of the charge needed afterwards, priced like travel
+     */
+    static double chargeCost(int batteryLevel, long jobMs) {
+        if (jobMs <= msUntilCharge(batteryLevel)) {
+            return 0;
+        }
+        return 2.0 * chargeDurationMs(batteryAfter(batteryLevel, jobMs)) / MOVE_STEP_MS;
+    }
+
+    /**
+     * Working time left before the battery reaches the threshold
+     */
+    static long msUntilCharge(int batteryLevel) {
+        return Math.max(0, batteryLevel - BATTERY_THRESHOLD) * BATTERY_DRAIN_INTERVAL_MS / BATTERY_DRAIN;
+    }
+
+    static int batteryAfter(int batteryLevel, long busyMs) {
+        return Math.max(0, batteryLevel - BATTERY_DRAIN * (int) (busyMs / BATTERY_DRAIN_INTERVAL_MS));
+    }
+
+    /**
+     * Time at a dock to charge from the given level to full
+     */
+    static long chargeDurationMs(int batteryLevel) {
+        return (100 - Math.max(0, Math.min(100, batteryLevel))) * CHARGE_MS_PER_PERCENT;
+    }
+
+    /**
+     * Cost of a follow-up job: waiting time counts like travel, one cell per tick
+     */
+    static double chainedBidCost(int ticksUntilFree, int distanceFromEnd, int batteryLevel) {
+        return bidCost(ticksUntilFree + distanceFromEnd, batteryLevel, false);
+    }
+
+    /**
+     * Ticks a whole job takes when started at (fromX, fromY)
+     */
+    static int jobTicks(PathPlanner planner, int fromX, int fromY, int pickupX, int pickupY,
+                        int deliveryX, int deliveryY) {
+        int toPickup = Math.max(0, planner.pathLength(fromX, fromY, pickupX, pickupY));
+        int toDelivery = Math.max(0, planner.pathLength(pickupX, pickupY, deliveryX, deliveryY));
+        return (int) (transportDurationMs(toPickup, toDelivery) / MOVE_STEP_MS);
+    }
+
+    static double calculateCost(PathPlanner planner, int fromX, int fromY, int batteryLevel,
+                                boolean hasCargo, int targetX, int targetY) {
+        int distance = planner.pathLength(fromX, fromY, targetX, targetY);
+        if (distance < 0) {
+            return -1;
+        }
+        return bidCost(distance, batteryLevel, hasCargo);
+    }
+
+    static double bidCost(int distance, int batteryLevel, boolean hasCargo) {
+        // Cost factors:
+        // - Distance (50% weight) - true path length around the racks
+        // - Battery level (30% weight) - lower battery = higher cost
+        // - Current load (20% weight)
+
+        double distanceCost = distance * 2.0;
+        double batteryCost = (100 - batteryLevel) * 0.3;
+        double loadCost = hasCargo ? 5.0 : 0.0;
+
+        return distanceCost + batteryCost + loadCost;
+    }
+
+    /**
+     * Start (or queue) an awarded transport task; note a rejected proposal
+     */
+    private boolean handleAward(ACLMessage msg) {
+        if (msg.getPerformative() == ACLMessage.ACCEPT_PROPOSAL) {
+            // Task assigned!
+            byte[] task = TaskCodec.taskPayload(msg);
+            if (task == null) {
+                EventLog.log(WARN, getLocalName(), "MALFORMED_ASSIGNMENT", msg.getConversationId());
+                return false;
+            }
+            QueuedTask job = new QueuedTask(msg.getConversationId(), msg.getSender(), task);
+            if (charging != null) {
+                // Won with a bid sent just before the dock was granted
+                stopCharging("ASSIGNED");
+            }
+            if (currentTask == null) {
+                startTask(job);
+            } else {
+                // Chained: starts as soon as the current job is delivered
+                taskQueue.add(job);
+                EventLog.log(INFO, getLocalName(), "QUEUED", job.taskId, taskQueue.size());
+            }
+            reportStatus();
+        } else {
+            // Proposal rejected - remain available
+            EventLog.log(DEBUG, getLocalName(), "REJECTED", msg.getConversationId());
+        }
+        return true;
+    }
+
+    /**
+     * Give up a task the coordinator wants to move to another robot, if it has
+     * not been picked up yet and this robot would now bid more for it than the
+     * cost in the request (at any cost if the request's cost is negative: the
+     * station has cancelled the order). Decided here, on the robot's thread, so a task is
+     * either still carried out by this robot (REFUSE) or dropped before the
+     * coordinator hands it on (AGREE), never both.
+     */
+    private boolean handleRelease(ACLMessage msg) {
+        byte[] request = TaskCodec.proposalPayload(msg);
+        if (request == null) {
+            return false;
+        }
+        String taskId = "TASK-" + TaskCodec.taskNumber(request);
+        double cost = heldTaskCost(taskId);
+        double bar = TaskCodec.proposalCost(request);
+        String refusal = releaseRefusal(cost, bar);
+        ACLMessage reply = msg.createReply();
+        if (refusal != null) {
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent(refusal);
+            send(reply);
+            return true;
+        }
+        if (taskId.equals(currentTask)) {
+            removeBehaviour(transport);
+            if (activeLeg != null && traffic != null) {
+                holdCell(); // The dropped route's reservations are no longer driven
+            }
+            activeLeg = null;
+            endTask();
+        } else {
+            for (Iterator<QueuedTask> it = taskQueue.iterator(); it.hasNext(); ) {
+                if (it.next().taskId.equals(taskId)) {
+                    it.remove();
+                }
+            }
+            reportStatus();
+        }
+        tasksReleased.incrementAndGet();
+        reply.setPerformative(ACLMessage.AGREE);
+        send(reply);
+        EventLog.log(INFO, getLocalName(), "RELEASED", taskId, null, EventLog.NONE, EventLog.NONE, cost);
+        return true;
+    }
+
+    /**
+     * Why a robot refuses to release a task it would bid heldCost for (a
+     * heldTaskCost result), or null if it gives the task up: always when the
+     * bar is negative, otherwise only when it would now bid more than the bar
+     */
+    static String releaseRefusal(double heldCost, double bar) {
+        if (heldCost == HELD_LOADED) {
+            return TaskCodec.RELEASE_LOADED;
+        }
+        if (heldCost == HELD_UNKNOWN) {
+            return TaskCodec.RELEASE_UNKNOWN;
+        }
+        if (bar < 0) {
+            return null;
+        }
+        if (heldCost == HELD_NO_ROUTE) {
+            return TaskCodec.RELEASE_NO_ROUTE;
+        }
+        return heldCost <= bar ? TaskCodec.RELEASE_NO_GAIN : null;
+    }
+
+    /**
+     * Replace this robot's reserved route with a hold on the cell it stopped
+     * in. The traffic agent re-plans from here to here, which releases the
+     * rest of the route; its answer finds no leg waiting and is dropped.
+     */
+    private void holdCell() {
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.addReceiver(traffic);
+        request.setConversationId(TaskCodec.ROUTE_CONVERSATION);
+        request.setReplyWith(getLocalName() + "-route-" + (++routeRequests));
+        request.setByteSequenceContent(TaskCodec.encodeRouteRequest(locationX, locationY, locationX, locationY, 0));
+        send(request);
+    }
+
+    /**
+     * What this robot would bid now for a task it already holds, counting the
+     * work queued ahead of it, or HELD_LOADED once the task is past the drive
+     * to pickup, HELD_NO_ROUTE if its pickup cannot be reached, HELD_UNKNOWN if
+     * the task is not held here
+     */
+    private double heldTaskCost(String taskId) {
+        if (currentTask == null) {
+            return HELD_UNKNOWN;
+        }
+        if (taskId.equals(currentTask)) {
+            if (transport.stage == TransportStage.NO_ROUTE) {
+                return HELD_NO_ROUTE;
+            }
+            if (transport.stage != TransportStage.TO_PICKUP) {
+                return HELD_LOADED;
+            }
+            int distance = planner.pathLength(locationX, locationY, transport.pickupX, transport.pickupY);
+            return distance < 0 ? HELD_NO_ROUTE :
+                    drivingTaskCost(distance, batteryLevel, transport.remainingTicks() * MOVE_STEP_MS);
+        }
+        int ticks = transport.remainingTicks();
+        int endX = transport.deliveryX;
+        int endY = transport.deliveryY;
+        for (QueuedTask queued : taskQueue) {
+            if (queued.taskId.equals(taskId)) {
+                double cost = chainedJobCost(planner, ticks, endX, endY, batteryLevel, queued.pickupX,
+                                             queued.pickupY, queued.deliveryX, queued.deliveryY);
+                return cost < 0 ? HELD_NO_ROUTE : cost;
+            }
+            ticks += jobTicks(planner, endX, endY, queued.pickupX, queued.pickupY,
+                              queued.deliveryX, queued.deliveryY);
+            endX = queued.deliveryX;
+            endY = queued.deliveryY;
+        }
+        return HELD_UNKNOWN;
+    }
+
+    private void startTask(QueuedTask job) {
+        currentTask = job.taskId;
+        taskOwner = job.owner;
+        taskStartedAt = System.currentTimeMillis();
+        EventLog.log(INFO, getLocalName(), "EXECUTING", currentTask);
+
+        // Execute transport step by step so the agent keeps handling messages
+        transport = new TransportBehaviour(job.pickupX, job.pickupY, job.deliveryX, job.deliveryY);
+        addBehaviour(transport);
+    }
+
+    /**
+     * Non-blocking transport state machine: navigate to pickup, load, navigate
+     * to delivery, unload. Each tick performs at most one movement step or
+     * stage transition, so CFPs and other messages are served in between.
+     */
+    private class TransportBehaviour extends TickerBehaviour {
+        private final int pickupX;
+        private final int pickupY;
+        private final int deliveryX;
+        private final int deliveryY;
+        private TransportStage stage = TransportStage.TO_PICKUP;
+        private Leg leg;
+        private int waitTicks;
+        private final int expectedTicks; // Whole job, for bidding on follow-up work
+        private int elapsedTicks;
+
+        TransportBehaviour(int pickupX, int pickupY, int deliveryX, int deliveryY) {
+            super(TransportAgent.this, MOVE_STEP_MS);
+            this.pickupX = pickupX;
+            this.pickupY = pickupY;
+            this.deliveryX = deliveryX;
+            this.deliveryY = deliveryY;
+            this.expectedTicks = jobTicks(planner, locationX, locationY, pickupX, pickupY, deliveryX, deliveryY);
+
+            EventLog.log(DEBUG, getLocalName(), "TO_PICKUP", currentTask, pickupX, pickupY);
+            if (!startLeg(pickupX, pickupY)) {
+                stage = TransportStage.NO_ROUTE;
+            }
+        }
+
+        int remainingTicks() {
+            return Math.max(0, expectedTicks - elapsedTicks);
+        }
+
+        protected void onTick() {
+            elapsedTicks++;
+            if (waitTicks > 0) {
+                waitTicks--;
+                return;
+            }
+
+            switch (stage) {
+                case TO_PICKUP:
+                    if (leg.advance()) {
+                        stage = TransportStage.AT_PICKUP;
+                        waitTicks = ticksFor(DOCKING_MS);
+                    }
+                    break;
+                case AT_PICKUP:
+                    EventLog.log(DEBUG, getLocalName(), "LOADING", currentTask);
+                    hasCargo = true;
+                    stage = TransportStage.LOADED;
+                    waitTicks = ticksFor(HANDLING_MS);
+                    break;
+                case LOADED:
+                    EventLog.log(DEBUG, getLocalName(), "TO_DELIVERY", currentTask, deliveryX, deliveryY);
+                    stage = startLeg(deliveryX, deliveryY) ? TransportStage.TO_DELIVERY : TransportStage.NO_ROUTE;
+                    break;
+                case TO_DELIVERY:
+                    if (leg.advance()) {
+                        stage = TransportStage.AT_DELIVERY;
+                        waitTicks = ticksFor(DOCKING_MS);
+                    }
+                    break;
+                case AT_DELIVERY:
+                    EventLog.log(DEBUG, getLocalName(), "UNLOADING", currentTask);
+                    hasCargo = false;
+                    stage = TransportStage.UNLOADED;
+                    waitTicks = ticksFor(HANDLING_MS);
+                    break;
+                case UNLOADED:
+                    // Task complete
+                    EventLog.log(INFO, getLocalName(), "COMPLETED", currentTask);
+                    finishTask(ACLMessage.INFORM, "DONE");
+                    stop();
+                    break;
+                case NO_ROUTE:
+                    EventLog.log(WARN, getLocalName(), "FAILED", currentTask, "NO_ROUTE");
+                    hasCargo = false;
+                    finishTask(ACLMessage.FAILURE, "NO_ROUTE");
+                    stop();
+                    break;
+            }
+        }
+
+        /**
+         * Start driving to the target, holding it for the docking and handling
+         * that follow; returns false if the target cannot be reached
+         */
+        private boolean startLeg(int targetX, int targetY) {
+            leg = new Leg(targetX, targetY, ticksFor(DOCKING_MS) + ticksFor(HANDLING_MS) + 2);
+            if (!leg.start()) {
+                EventLog.log(WARN, getLocalName(), "NO_ROUTE", currentTask, targetX, targetY);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * One drive to a target cell. With a traffic control agent the route is
+     * timed and reserved against every other robot's: the robot is wherever
+     * the route puts it at the current tick, and asks again when a yield
+     * plan (one that stops short of the target) runs out. Without one, or
+     * when no route comes back in time, the robot follows the shared
+     * planner's A* route one cell per tick.
+     */
+    private class Leg {
+        private final int targetX;
+        private final int targetY;
+        private final int dwellTicks; // Ticks the target stays occupied after arrival
+        private int[] route;
+        private int routeIndex;
+        private long startTick = -1;  // Tick of route[0] for a timed route, -1 for an untimed one
+        private String pendingReply;  // Reply-with of the open route request
+        private long requestedAt;
+
+        Leg(int targetX, int targetY, int dwellTicks) {
+            this.targetX = targetX;
+            this.targetY = targetY;
+            this.dwellTicks = dwellTicks;
+        }
+
+        /**
+         * Ask for a route; returns false if the target cannot be reached at all
+         */
+        boolean start() {
+            if (planner.pathLength(locationX, locationY, targetX, targetY) < 0) {
+                return false;
+            }
+            activeLeg = this;
+            findTrafficControl();
+            if (traffic != null) {
+                requestRoute();
+            } else {
+                followOwnRoute();
+            }
+            return true;
+        }
+
+        private void requestRoute() {
+            ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+            request.addReceiver(traffic);
+            request.setConversationId(TaskCodec.ROUTE_CONVERSATION);
+            pendingReply = getLocalName() + "-route-" + (++routeRequests);
+            request.setReplyWith(pendingReply);
+            request.setByteSequenceContent(
+                    TaskCodec.encodeRouteRequest(locationX, locationY, targetX, targetY, dwellTicks));
+            send(request);
+            requestedAt = System.currentTimeMillis();
+        }
+
+        private void followOwnRoute() {
+            pendingReply = null;
+            startTick = -1;
+            route = planner.findPath(locationX, locationY, targetX, targetY);
+            routeIndex = 0;
+            EventLog.log(DEBUG, getLocalName(), "ROUTE", currentTask, route.length);
+        }
+
+        /**
+         * Take the traffic agent's answer to the open request
+         */
+        void onRoute(byte[] payload) {
+            pendingReply = null;
+            int length = TaskCodec.routeLength(payload);
+            if (length == 0) {
+                followOwnRoute();
+                return;
+            }
+            route = new int[length];
+            for (int i = 0; i < length; i++) {
+                route[i] = TaskCodec.routeCell(payload, i);
+            }
+            startTick = TaskCodec.routeStartTick(payload);
+            EventLog.log(DEBUG, getLocalName(), "ROUTE", currentTask, length, startTick);
+        }
+
+        /**
+         * Move along the route for this tick; returns true once the target is reached
+         */
+        boolean advance() {
+            if (pendingReply != null) {
+                if (System.currentTimeMillis() - requestedAt < ROUTE_TIMEOUT_MS) {
+                    return false;
+                }
+                EventLog.log(WARN, getLocalName(), "ROUTE_TIMEOUT", traffic.getLocalName());
+                traffic = null; // Plan alone until a traffic agent is found again
+                followOwnRoute();
+            }
+            WarehouseMap map = planner.getMap();
+            if (startTick < 0) {
+                if (routeIndex < route.length) {
+                    moveTo(route[routeIndex]);
+                    routeIndex++;
+                }
+                return routeIndex >= route.length;
+            }
+            long index = TrafficControlAgent.currentTick() - startTick;
+            if (index < 0) {
+                return false;
+            }
+            int last = route.length - 1;
+            moveTo(route[(int) Math.min(index, last)]);
+            if (index < last) {
+                return false;
+            }
+            if (route[last] == map.nearestFreeCell(targetX, targetY)) {
+                return true;
+            }
+            requestRoute(); // A yield plan ran out: ask again from here
+            return false;
+        }
+
+        private void moveTo(int cell) {
+            WarehouseMap map = planner.getMap();
+            locationX = map.cellX(cell);
+            locationY = map.cellY(cell);
+        }
+    }
+
+    /**
+     * Look up the traffic control agent, at most once per search interval
+     */
+    private void findTrafficControl() {
+        long now = System.currentTimeMillis();
+        if (traffic != null || now - trafficSearchedAt < TRAFFIC_SEARCH_INTERVAL_MS) {
+            return;
+        }
+        trafficSearchedAt = now;
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(TrafficControlAgent.SERVICE_TYPE);
+        template.addServices(sd);
+        try {
+            DFAgentDescription[] result = DFService.search(this, template);
+            if (result.length > 0) {
+                traffic = result[0].getName();
+                EventLog.log(INFO, getLocalName(), "TRAFFIC_CONTROL", traffic.getLocalName());
+            }
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Hand a timed route to the leg that asked for it; answers to superseded
+     * requests are stale
+     */
+    private boolean handleRoute(ACLMessage msg) {
+        byte[] route = TaskCodec.routePayload(msg);
+        if (route == null || activeLeg == null || activeLeg.pendingReply == null ||
+                !activeLeg.pendingReply.equals(msg.getInReplyTo())) {
+            return false;
+        }
+        activeLeg.onRoute(route);
+        return true;
+    }
+
+    /**
+     * Report the outcome of the current task to the coordinator that assigned it
+     * and become available again
+     */
+    private void finishTask(int performative, String outcome) {
+        ACLMessage report = new ACLMessage(performative);
+        report.addReceiver(taskOwner);
+        report.setOntology(TaskCodec.LIFECYCLE_ONTOLOGY);
+        report.setConversationId(currentTask);
+        report.setContent(outcome);
+        send(report);
+        (performative == ACLMessage.INFORM ? tasksCompleted : tasksFailed).incrementAndGet();
+        endTask();
+    }
+
+    /**
+     * Clear the current task and start the next queued one, if any
+     */
+    private void endTask() {
+        busyMs += System.currentTimeMillis() - taskStartedAt;
+
+        currentTask = null;
+        taskOwner = null;
+        transport = null;
+        if (!taskQueue.isEmpty()) {
+            startTask(taskQueue.poll()); // Next pickup starts without an idle gap
+        } else {
+            idleSince = System.currentTimeMillis();
+            if (zoned) {
+                findCoordinator(); // The job may have ended in another zone
+            }
+        }
+        reportStatus();
+    }
+
+    /**
+     * Ask the coordinator for a dock when the battery is low, or when idle long
+     * enough below the opportunistic level (a predicted idle window)
+     */
+    private void planCharge() {
+        if (coordinator == null || chargeRequested || charging != null || currentTask != null) {
+            return;
+        }
+        int need = chargeNeed(batteryLevel, System.currentTimeMillis() - idleSince);
+        if (need == 0) {
+            return;
+        }
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.addReceiver(coordinator);
+        request.setConversationId(TaskCodec.CHARGE_CONVERSATION);
+        request.setByteSequenceContent(TaskCodec.encodeChargeRequest(locationX, locationY, batteryLevel, need == 2));
+        send(request);
+        chargeRequested = true;
+        EventLog.log(DEBUG, getLocalName(), "CHARGE_REQUESTED", null, batteryLevel, need);
+        reportStatus(); // Stop being polled while the request is open
+    }
+
+    /**
+     * Follow the coordinator's answer to a charge request: drive to
+     * the granted dock, or wait for the next check if charging is deferred
+     */
+    private boolean handleChargeReply(ACLMessage msg) {
+        chargeRequested = false;
+        byte[] dock = TaskCodec.chargerPayload(msg);
+        if (msg.getPerformative() == ACLMessage.REFUSE || dock == null) {
+            idleSince = System.currentTimeMillis(); // Wait for the next idle window
+            reportStatus();
+            return true;
+        }
+        charging = new ChargeBehaviour(msg.getSender(), TaskCodec.chargerX(dock), TaskCodec.chargerY(dock));
+        if (currentTask != null) {
+            // Took a task while the request was open
+            stopCharging("ASSIGNED");
+            return true;
+        }
+        addBehaviour(charging);
+        return true;
+    }
+
+    /**
+     * Drive to the granted dock (holding it for the whole charge), then charge
+     * to full one percent at a time
+     */
+    private class ChargeBehaviour extends TickerBehaviour {
+        private final AID grantor;
+        private final Leg route;
+        private boolean reachable;
+        private boolean docked;
+        private long chargedMs;
+
+        ChargeBehaviour(AID grantor, int dockX, int dockY) {
+            super(TransportAgent.this, MOVE_STEP_MS);
+            this.grantor = grantor;
+            this.route = new Leg(dockX, dockY, (int) (chargeDurationMs(batteryLevel) / MOVE_STEP_MS));
+            EventLog.log(INFO, getLocalName(), "TO_CHARGER", grantor.getLocalName(), dockX, dockY);
+        }
+
+        public void onStart() {
+            reachable = route.start();
+        }
+
+        protected void onTick() {
+            if (!reachable) {
+                stopCharging("NO_ROUTE");
+                return;
+            }
+            if (!docked) {
+                docked = route.advance();
+                return;
+            }
+            chargedMs += MOVE_STEP_MS;
+            if (chargedMs >= CHARGE_MS_PER_PERCENT) {
+                chargedMs -= CHARGE_MS_PER_PERCENT;
+                batteryLevel = Math.min(100, batteryLevel + 1);
+            }
+            if (batteryLevel >= 100) {
+                charges.incrementAndGet();
+                stopCharging("CHARGED");
+            }
+        }
+    }
+
+    /**
+     * Leave the dock (charged, aborted or unreachable) and tell the coordinator it is free
+     */
+    private void stopCharging(String reason) {
+        ChargeBehaviour done = charging;
+        charging = null;
+        removeBehaviour(done);
+
+        ACLMessage release = new ACLMessage(ACLMessage.INFORM);
+        release.addReceiver(done.grantor);
+        release.setConversationId(TaskCodec.CHARGE_CONVERSATION);
+        send(release);
+        EventLog.log(INFO, getLocalName(), "CHARGE_ENDED", null, reason, batteryLevel);
+
+        if (currentTask == null) {
+            idleSince = System.currentTimeMillis();
+            if (zoned) {
+                findCoordinator(); // The dock may be in another zone
+            }
+            reportStatus();
+        }
+    }
+
+    static int ticksFor(long millis) {
+        return (int) ((millis + MOVE_STEP_MS - 1) / MOVE_STEP_MS);
+    }
+
+    /**
+     * Time TransportBehaviour takes for a job with the given leg lengths:
+     * one tick per cell (at least one per leg), the docking and handling
+     * pauses, and one tick for each of the four stage transitions
+     */
+    static long transportDurationMs(int toPickup, int toDelivery) {
+        int ticks = Math.max(toPickup, 1) + Math.max(toDelivery, 1) +
+                2 * (ticksFor(DOCKING_MS) + ticksFor(HANDLING_MS)) + 4;
+        return ticks * MOVE_STEP_MS;
+    }
+
+    protected void takeDown() {
+        try {
+            DFService.deregister(this);
+        } catch (FIPAException e) {
+            e.printStackTrace();
+        }
+        metrics.unregister();
+        EventLog.log(INFO, getLocalName(), "TERMINATED", null);
+    }
+}
+
@@ -0,0 +1,51 @@
+package warehouse;
+
+/**
+ * TransportTask - Typed description of a single transport job
+ *
+ * Shared by all agents so that requests, CFPs and task assignments no
+ * longer have to be rebuilt from colon-delimited strings at every hop.
+ * See TaskCodec for the wire format.
+ */
+public class TransportTask {
+
+    final int taskNumber; // 0 until the coordinator numbers the task
+    final int items;      // ItemType bit mask: everything consolidated on this trip
+    final int pickupX;
+    final int pickupY;
+    final int deliveryX;
+    final int deliveryY;
+    final int urgency;
+
+    public TransportTask(int taskNumber, ItemType itemType, int pickupX, int pickupY,
+                         int deliveryX, int deliveryY, int urgency) {
+        this(taskNumber, itemType.bit(), pickupX, pickupY, deliveryX, deliveryY, urgency);
+    }
+
+    public TransportTask(int taskNumber, int items, int pickupX, int pickupY,
+                         int deliveryX, int deliveryY, int urgency) {
+        this.taskNumber = taskNumber;
+        this.items = items;
+        this.pickupX = pickupX;
+        this.pickupY = pickupY;
+        this.deliveryX = deliveryX;
+        this.deliveryY = deliveryY;
+        this.urgency = urgency;
+    }
+
+    /**
+     * Copy of this task carrying the number assigned by the coordinator
+     */
+    public TransportTask withNumber(int number) {
+        return new TransportTask(number, items, pickupX, pickupY, deliveryX, deliveryY, urgency);
+    }
+
+    public String getTaskId() {
+        return "TASK-" + taskNumber;
+    }
+
+    public String toString() {
+        return ItemType.describe(items) + " (" + pickupX + "," + pickupY + ") -> (" +
+                deliveryX + "," + deliveryY + ") urgency " + urgency;
+    }
+}
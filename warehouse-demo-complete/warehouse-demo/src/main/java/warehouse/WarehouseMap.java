@@ -0,0 +1,165 @@
+package warehouse;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * WarehouseMap - Static occupancy grid of the warehouse floor
+ *
+ * Cells are either free floor or blocked (racks). The default layout has
+ * 2-cell wide racks separated by 3-cell aisles, with cross aisles along
+ * the edges and through the middle of the floor. Charging docks sit on free
+ * cells; the default layout has one in each corner.
+ *
+ * Cells are addressed either by (x, y) or by the packed index y * width + x.
+ */
+public class WarehouseMap {
+
+    private final int width;
+    private final int height;
+    private final boolean[] blocked;
+    private volatile int[] nearestFree; // Lazily built lookup, reset when the layout changes
+    private int[] chargers = new int[0];
+
+    public WarehouseMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.blocked = new boolean[width * height];
+    }
+
+    /**
+     * The BeaverWoodHome 20x20 floor: racks at x = 2-3, 7-8, 12-13, 17-18,
+     * rows y = 2-8 and 11-17
+     */
+    public static WarehouseMap createDefault() {
+        WarehouseMap map = new WarehouseMap(20, 20);
+        for (int rackX = 2; rackX < 20; rackX += 5) {
+            map.block(rackX, 2, rackX + 1, 8);
+            map.block(rackX, 11, rackX + 1, 17);
+        }
+        map.addCharger(0, 0);
+        map.addCharger(19, 0);
+        map.addCharger(0, 19);
+        map.addCharger(19, 19);
+        return map;
+    }
+
+    /**
+     * Place a charging dock on the free cell closest to (x, y)
+     */
+    public void addCharger(int x, int y) {
+        chargers = Arrays.copyOf(chargers, chargers.length + 1);
+        chargers[chargers.length - 1] = nearestFreeCell(x, y);
+    }
+
+    public int chargerCount() {
+        return chargers.length;
+    }
+
+    /**
+     * Cell of the i-th charging dock
+     */
+    public int chargerCell(int i) {
+        return chargers[i];
+    }
+
+    /**
+     * Block the inclusive rectangle (x1, y1) - (x2, y2)
+     */
+    public void block(int x1, int y1, int x2, int y2) {
+        for (int y = y1; y <= y2; y++) {
+            for (int x = x1; x <= x2; x++) {
+                if (inside(x, y)) {
+                    blocked[cell(x, y)] = true;
+                }
+            }
+        }
+        nearestFree = null;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int cellCount() {
+        return blocked.length;
+    }
+
+    public boolean inside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public boolean isFree(int x, int y) {
+        return inside(x, y) && !blocked[cell(x, y)];
+    }
+
+    public boolean isFree(int cell) {
+        return !blocked[cell];
+    }
+
+    public int cell(int x, int y) {
+        return y * width + x;
+    }
+
+    public int cellX(int cell) {
+        return cell % width;
+    }
+
+    public int cellY(int cell) {
+        return cell / width;
+    }
+
+    /**
+     * The closest free cell to (x, y), e.g. the aisle in front of a rack slot.
+     * Coordinates outside the floor are clamped first. Returns -1 if the
+     * whole floor is blocked.
+     */
+    public int nearestFreeCell(int x, int y) {
+        int[] lookup = nearestFree;
+        if (lookup == null) {
+            lookup = buildNearestFree();
+        }
+        return lookup[cell(Math.max(0, Math.min(width - 1, x)), Math.max(0, Math.min(height - 1, y)))];
+    }
+
+    private synchronized int[] buildNearestFree() {
+        if (nearestFree == null) {
+            int[] lookup = new int[blocked.length];
+            for (int cell = 0; cell < blocked.length; cell++) {
+                lookup[cell] = searchNearestFree(cell);
+            }
+            nearestFree = lookup;
+        }
+        return nearestFree;
+    }
+
+    private int searchNearestFree(int start) {
+        if (!blocked[start]) {
+            return start;
+        }
+        boolean[] seen = new boolean[blocked.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        seen[start] = true;
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            if (!blocked[current]) {
+                return current;
+            }
+            int cx = cellX(current);
+            int cy = cellY(current);
+            int[][] neighbours = {{cx + 1, cy}, {cx - 1, cy}, {cx, cy + 1}, {cx, cy - 1}};
+            for (int[] n : neighbours) {
+                if (inside(n[0], n[1]) && !seen[cell(n[0], n[1])]) {
+                    seen[cell(n[0], n[1])] = true;
+                    queue.add(cell(n[0], n[1]));
+                }
+            }
+        }
+        return -1;
+    }
+}
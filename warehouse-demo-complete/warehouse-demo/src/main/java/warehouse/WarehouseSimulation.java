@@ -0,0 +1,876 @@
+package warehouse;
+
+import jade.core.AID;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * WarehouseSimulation - Headless discrete-event simulation of the warehouse MAS
+ *
+ * Runs the agents' models on a virtual clock instead of a JADE platform, so a
+ * full shift with hundreds or thousands of robots finishes in seconds.
+ * Messages are modelled as a fixed delay. Allocation is not modelled but run:
+ * each zone's coordinator is the same TaskAllocator the CoordinatorAgent
+ * drives (urgency queue with retry backoff, RobotIndex candidates, lowest-bid
+ * or batched min-cost award, re-auction of tasks not yet picked up, idle
+ * robots handed to a busier zone), with scheduled events in place of
+ * messages and timers. Around it the simulation reuses the shared
+ * PathPlanner, the robots' bid cost, follow-up task queue, release decision,
+ * transport timing, battery drain and charging policy, the coordinator's dock
+ * scheduling and journal, and the stations' recipe, consumption forecast and
+ * consolidated just-in-time reorders, picked up from the nearest
+ * WarehouseStock bin that holds them.
+ *
+ * With traffic control on, every drive is planned through the
+ * TrafficControlAgent's ReservationTable on simulated ticks, so robots wait
+ * for and route around each other; with it off they pass through one another.
+ *
+ * Reports throughput (tasks per simulated hour), allocation latency, fleet
+ * travel, utilization and availability, re-auctions, zone handoffs, answers
+ * that arrived too late to count (what the agents' dispatchers drop as
+ * stale), stockouts and units per trip. Running the same seed with GREEDY and
+ * BATCH, with robot queue depth 0 and 1, or with one and several zones
+ * compares the allocation variants; runs with traffic control at several
+ * fleet sizes show how throughput holds up with density. With
+ * -Dwarehouse.journal.dir set, each zone journals its tasks as a coordinator
+ * would.
+ *
+ * Usage: java -cp jade.jar;classes warehouse.WarehouseSimulation [robots] [stations] [minutes] [seed]
+ *        [messageDelayMs] [cfpFanout] [GREEDY|BATCH] [robotQueueDepth] [TRAFFIC|FREE] [zones]
+ */
+public class WarehouseSimulation {
+
+    private final EventScheduler scheduler = new EventScheduler();
+    private final PathPlanner planner = PathPlanner.shared();
+    private final WarehouseMap map = planner.getMap();
+    private final Map<AID, SimRobot> robotsById = new HashMap<>();
+    private final List<SimRobot> robots = new ArrayList<>();
+    private final List<SimStation> stations = new ArrayList<>();
+    private final List<Zone> zones = new ArrayList<>();
+    private final Random random;
+    private final long messageDelay;
+    private final int cfpFanout;
+    private final CoordinatorAgent.AllocationMode allocationMode;
+    private final int robotQueueDepth;
+    private final ReservationTable traffic; // Null when robots drive through one another
+    private final WarehouseStock stock = new WarehouseStock(map);
+
+    // Statistics
+    private int taskCounter = 0;
+    private int tasksAssigned = 0;
+    private int tasksCompleted = 0;
+    private int tasksFailed = 0;
+    private int tasksReassigned = 0;
+    private int releasesRefused = 0;
+    private int robotsHandedOff = 0;
+    private long staleAnswers = 0;  // Bids, release answers and reports for closed rounds or tasks
+    private long productionAttempts = 0;
+    private long stockouts = 0;
+    private long unitsDelivered = 0;
+    private long itemsDelivered = 0; // Item types over all deliveries, for consolidation
+    private long emptyTravel = 0;   // Cells driven to pickups
+    private long loadedTravel = 0;  // Cells driven from pickups to delivery
+    private int charges = 0;
+    private int urgentCharges = 0;
+    private long availabilitySamples = 0;
+    private long availableSum = 0;  // Robots able to take work, summed over samples
+    private int availableMin = Integer.MAX_VALUE;
+    private long blockedMs = 0;     // Drive time lost to waiting and detours
+    private final List<Long> allocationLatencies = new ArrayList<>();
+    private final List<Long> completionLatencies = new ArrayList<>();
+
+    private class SimRobot {
+        final AID id;
+        int x;
+        int y;
+        int battery = 100;
+        Zone zone;            // Coordinator the robot reports to
+        SimTask current;      // Job in progress, null when idle
+        final Deque<SimTask> queue = new ArrayDeque<>(); // Accepted follow-up jobs
+        int trip;             // Bumped when the current job is dropped, so its pending events are ignored
+        long freeAt;          // When the current job ends
+        long busySince;
+        long busyTotal;
+        boolean chargeRequested;
+        boolean charging;
+        Zone dockZone;        // Coordinator that granted the dock
+        long idleSince;
+
+        SimRobot(String name, int x, int y) {
+            this.id = new AID(name, AID.ISGUID);
+            this.x = x;
+            this.y = y;
+        }
+
+        boolean available() {
+            return battery > TransportAgent.BATTERY_THRESHOLD && !chargeRequested && !charging &&
+                    (current == null || queue.size() < robotQueueDepth);
+        }
+
+        /**
+         * Same bid as TransportAgent: from here when idle, else from where and when the queue ends
+         */
+        double bid(SimTask task) {
+            TransportTask job = task.task;
+            if (current == null) {
+                return TransportAgent.jobCost(planner, x, y, battery, false, job.pickupX, job.pickupY,
+                                              job.deliveryX, job.deliveryY);
+            }
+            return chainedCost(task, null);
+        }
+
+        /**
+         * Cost of a task behind the current job and the queue, or, with upTo
+         * set, behind the queued jobs ahead of upTo
+         */
+        double chainedCost(SimTask task, SimTask upTo) {
+            int ticks = (int) (Math.max(0, freeAt - scheduler.now()) / TransportAgent.MOVE_STEP_MS);
+            int endX = current.task.deliveryX;
+            int endY = current.task.deliveryY;
+            for (SimTask queued : queue) {
+                if (queued == upTo) {
+                    break;
+                }
+                ticks += TransportAgent.jobTicks(planner, endX, endY, queued.task.pickupX, queued.task.pickupY,
+                                                 queued.task.deliveryX, queued.task.deliveryY);
+                endX = queued.task.deliveryX;
+                endY = queued.task.deliveryY;
+            }
+            TransportTask job = task.task;
+            return TransportAgent.chainedJobCost(planner, ticks, endX, endY, battery, job.pickupX, job.pickupY,
+                                                 job.deliveryX, job.deliveryY);
+        }
+
+        /**
+         * Status update as the coordinator handles it: a robot that just became
+         * free lets waiting tasks skip their backoff, or triggers a re-auction
+         */
+        void publishStatus() {
+            RobotIndex.RobotStatus previous = zone.robotIndex.get(id);
+            boolean wasAvailable = previous != null && previous.available;
+            boolean available = available();
+            zone.robotIndex.update(id, x, y, battery, available);
+            if (available && !wasAvailable) {
+                zone.allocator.robotFreed(zone.activeTasks.values(), scheduler.now());
+            }
+        }
+
+        /**
+         * Work for the coordinator of the zone the robot is in; the previous one
+         * drops it from its index when the robot's notice arrives
+         */
+        void findZone() {
+            Zone here = zoneAt(x);
+            if (here != zone) {
+                Zone previous = zone;
+                zone = here;
+                scheduler.schedule(messageDelay, () -> previous.robotIndex.remove(id));
+            }
+        }
+    }
+
+    private class SimStation {
+        final String name;
+        final int x;        // Delivery point
+        final int y;
+        final int[] inventory = new int[ItemType.values().length];
+        final ConsumptionForecast forecast = ProductionStationAgent.newForecast();
+        long cycle = 0;
+        boolean requestPending = false;
+        int items;
+        int[] ordered;
+        long orderedAt;
+
+        SimStation(String name, int cell) {
+            this.name = name;
+            this.x = map.cellX(cell);
+            this.y = map.cellY(cell);
+            Arrays.fill(inventory, ProductionStationAgent.INITIAL_INVENTORY);
+        }
+    }
+
+    private class SimTask extends TaskAllocator.Auction {
+        final SimStation station;
+        final Zone zone;
+        long firstAssignedAt = -1;
+        long startedAt;     // When the robot began the job
+        int toPickup;
+        int toDelivery;
+        boolean loaded;     // The robot has reached the pickup
+
+        SimTask(TransportTask task, SimStation station, Zone zone, long createdAt) {
+            super(task, createdAt);
+            this.station = station;
+            this.zone = zone;
+        }
+    }
+
+    /**
+     * One coordinator: a zone's robot index, allocator, docks and journal.
+     * Carries the allocator's decisions out as scheduled events.
+     */
+    private class Zone implements TaskAllocator.Host<SimTask> {
+        final int index;
+        final RobotIndex robotIndex = new RobotIndex(map.width(), CoordinatorAgent.INDEX_CELL_SIZE);
+        final TaskAllocator<SimTask> allocator;
+        final Map<Integer, SimTask> activeTasks = new LinkedHashMap<>(); // Bidding or assigned
+        final int[] docks;
+        final SimRobot[] dockHolders;
+        TaskJournal journal; // Null unless warehouse.journal.dir is set
+
+        Zone(int index, int zoneCount) {
+            this.index = index;
+            this.allocator = new TaskAllocator<>(robotIndex, this, allocationMode, CoordinatorAgent.NoBidPolicy.RETRY,
+                    cfpFanout, Collections.<AID>emptySet());
+            docks = CoordinatorAgent.zoneDocks(map, index, zoneCount);
+            for (int cell : docks) {
+                planner.precompute(map.cellX(cell), map.cellY(cell));
+            }
+            dockHolders = new SimRobot[docks.length];
+        }
+
+        public void callForProposals(SimTask task, List<AID> candidates) {
+            // Bids are computed as the CFP goes out; every polled robot answers after CFP + PROPOSE delays
+            Map<AID, Double> bids = new LinkedHashMap<>();
+            for (AID id : candidates) {
+                bids.put(id, robotsById.get(id).bid(task));
+            }
+            scheduler.schedule(2 * messageDelay, () -> {
+                for (Map.Entry<AID, Double> bid : bids.entrySet()) {
+                    boolean current = bid.getValue() >= 0
+                            ? allocator.propose(task, bid.getKey(), bid.getValue(), scheduler.now())
+                            : allocator.refuse(task, bid.getKey(), scheduler.now());
+                    if (!current) {
+                        staleAnswers++;
+                    }
+                }
+            });
+        }
+
+        public void award(SimTask task, AID winner) {
+            if (task.firstAssignedAt < 0) {
+                task.firstAssignedAt = task.assignedAt;
+                tasksAssigned++;
+                allocationLatencies.add(task.assignedAt - task.createdAt);
+            }
+            if (journal != null) {
+                journal.assigned(task.task.taskNumber, task.assignedAt, winner.getName());
+            }
+            SimRobot robot = robotsById.get(winner);
+            if (robot.current == null) {
+                robot.current = task;
+                robot.busySince = scheduler.now();
+                scheduler.schedule(messageDelay, () -> executeTask(robot, task));
+            } else {
+                robot.queue.add(task);
+            }
+            // The robot reports its status after accepting, so it can be polled again if its queue has room
+            scheduler.schedule(2 * messageDelay, robot::publishStatus);
+        }
+
+        public void challenge(SimTask task, AID challenger, double bar) {
+            AID assignee = task.assignee;
+            scheduler.schedule(messageDelay, () -> {
+                String refusal = releaseTask(robotsById.get(assignee), task, bar);
+                scheduler.schedule(messageDelay, () -> releaseAnswered(task, assignee, refusal));
+            });
+        }
+
+        /**
+         * The assignee's AGREE (refusal null) or REFUSE, as CoordinatorAgent.handleRelease
+         */
+        private void releaseAnswered(SimTask task, AID assignee, String refusal) {
+            if (!activeTasks.containsKey(task.task.taskNumber) || !assignee.equals(task.assignee)) {
+                staleAnswers++;
+                allocator.endChallenge(task);
+                allocator.dispatch(scheduler.now());
+            } else if (refusal != null) {
+                releasesRefused++;
+                allocator.kept(task, TaskCodec.RELEASE_LOADED.equals(refusal), scheduler.now());
+            } else {
+                tasksReassigned++;
+                allocator.released(task, scheduler.now());
+            }
+        }
+
+        public void scheduleBatch() {
+            scheduler.schedule(CoordinatorAgent.BATCH_WINDOW_MS, () -> allocator.assignBatch(scheduler.now()));
+        }
+
+        public void retry(SimTask task, long delayMs) {
+            // Queued again by the allocator
+        }
+
+        public void giveUp(SimTask task) {
+            tasksFailed++;
+            finish(task);
+            task.station.requestPending = false;
+            stock.release(task.station.name);
+        }
+
+        public void unassigned(SimTask task) {
+            if (journal != null) {
+                journal.unassigned(task.task.taskNumber);
+            }
+        }
+
+        /**
+         * The robot's completion report: close the task unless the robot no longer holds it
+         */
+        void completed(SimTask task, SimRobot robot) {
+            if (!activeTasks.containsKey(task.task.taskNumber) || !robot.id.equals(task.assignee)) {
+                staleAnswers++;
+                return;
+            }
+            finish(task);
+        }
+
+        void finish(SimTask task) {
+            activeTasks.remove(task.task.taskNumber);
+            allocator.withdraw(task);
+            if (journal != null) {
+                journal.finished(task.task.taskNumber);
+            }
+        }
+
+        /**
+         * Send this zone's queue length and idle robot count to every other zone
+         */
+        void broadcastLoad() {
+            int queued = allocator.queued();
+            int idle = allocator.idleRobots();
+            for (Zone peer : zones) {
+                if (peer != this) {
+                    scheduler.schedule(messageDelay, () -> peer.handleLoad(this, queued, idle));
+                }
+            }
+        }
+
+        /**
+         * Hand the idle robots closest to a busier zone over to it, as CoordinatorAgent.handleZone
+         */
+        void handleLoad(Zone peer, int queued, int idle) {
+            int count = allocator.handOffCount(queued, idle);
+            if (count == 0) {
+                return;
+            }
+            int centerX = (ZoneDirectory.zoneStart(peer.index, map.width(), zones.size()) +
+                           ZoneDirectory.zoneStart(peer.index + 1, map.width(), zones.size())) / 2;
+            for (AID id : allocator.idleNear(centerX, map.height() / 2, count)) {
+                robotIndex.remove(id);
+                robotsHandedOff++;
+                SimRobot robot = robotsById.get(id);
+                scheduler.schedule(messageDelay, () -> {
+                    // A busy robot ignores the handoff and keeps reporting here
+                    if (robot.current == null && robot.available()) {
+                        robot.zone = peer;
+                    }
+                    robot.publishStatus();
+                });
+            }
+        }
+    }
+
+    public WarehouseSimulation(int robotCount, int stationCount, long seed, long messageDelay, int cfpFanout,
+                               CoordinatorAgent.AllocationMode allocationMode, int robotQueueDepth,
+                               boolean trafficControl, int zoneCount) {
+        this.random = new Random(seed);
+        this.messageDelay = messageDelay;
+        this.cfpFanout = cfpFanout;
+        this.allocationMode = allocationMode;
+        this.robotQueueDepth = robotQueueDepth;
+        this.traffic = trafficControl ? new ReservationTable(map) : null;
+
+        for (int i = 0; i < zoneCount; i++) {
+            Zone zone = new Zone(i, zoneCount);
+            zones.add(zone);
+            scheduler.scheduleRepeating(CoordinatorAgent.DISPATCH_INTERVAL_MS,
+                    () -> zone.allocator.dispatch(scheduler.now()));
+            scheduler.scheduleRepeating(CoordinatorAgent.REAUCTION_INTERVAL_MS,
+                    () -> zone.allocator.reauction(zone.activeTasks.values(), scheduler.now()));
+            if (zoneCount > 1) {
+                scheduler.scheduleRepeating(CoordinatorAgent.LOAD_INTERVAL_MS, zone::broadcastLoad);
+            }
+        }
+        openJournals();
+
+        for (int i = 1; i <= robotCount; i++) {
+            int start = map.nearestFreeCell(random.nextInt(map.width()), random.nextInt(map.height()));
+            SimRobot robot = new SimRobot("robot" + i, map.cellX(start), map.cellY(start));
+            robots.add(robot);
+            robotsById.put(robot.id, robot);
+            robot.zone = zoneAt(robot.x);
+            robot.publishStatus();
+            long checkPhase = (long) (random.nextDouble() * TransportAgent.CHARGE_CHECK_MS);
+            scheduler.schedule(checkPhase, () ->
+                    scheduler.scheduleRepeating(TransportAgent.CHARGE_CHECK_MS, () -> planCharge(robot)));
+        }
+        for (int i = 1; i <= stationCount; i++) {
+            // Each station has its own delivery point on the floor, as ProductionStationAgent's x, y
+            int cell = map.nearestFreeCell(random.nextInt(map.width()), random.nextInt(map.height()));
+            SimStation station = new SimStation("station" + i, cell);
+            planner.precompute(map.cellX(cell), map.cellY(cell));
+            stations.add(station);
+            // Stations start with random phase, as agents would on a real platform
+            long productionPhase = (long) (random.nextDouble() * ProductionStationAgent.PRODUCTION_INTERVAL_MS);
+            long checkPhase = (long) (random.nextDouble() * ProductionStationAgent.INVENTORY_CHECK_MS);
+            scheduler.schedule(productionPhase, () ->
+                    scheduler.scheduleRepeating(ProductionStationAgent.PRODUCTION_INTERVAL_MS, () -> produce(station)));
+            scheduler.schedule(checkPhase, () ->
+                    scheduler.scheduleRepeating(ProductionStationAgent.INVENTORY_CHECK_MS, () -> checkInventory(station)));
+        }
+        scheduler.scheduleRepeating(MetricsRegistry.SAMPLE_INTERVAL_MS, this::sampleAvailability);
+        if (traffic != null) {
+            scheduler.scheduleRepeating(1000, () -> traffic.expire(scheduler.now() / TransportAgent.MOVE_STEP_MS));
+        }
+    }
+
+    private Zone zoneAt(int x) {
+        return zones.get(ZoneDirectory.zoneOf(x, map.width(), zones.size()));
+    }
+
+    /**
+     * Give every zone a fresh journal if warehouse.journal.dir is set; a
+     * simulation starts empty, so older generations under its names are deleted
+     */
+    private void openJournals() {
+        String dir = System.getProperty("warehouse.journal.dir");
+        if (dir == null) {
+            return;
+        }
+        for (Zone zone : zones) {
+            String name = "simulation-zone" + zone.index;
+            File[] old = new File(dir).listFiles((parent, file) ->
+                    file.startsWith(name + ".") && file.endsWith(".journal"));
+            for (File file : old != null ? old : new File[0]) {
+                file.delete();
+            }
+            try {
+                zone.journal = TaskJournal.open(new File(dir), name);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            scheduler.scheduleRepeating(CoordinatorAgent.CHECKPOINT_INTERVAL_MS, zone.journal::checkpoint);
+        }
+    }
+
+    // ---- ProductionStationAgent model ----
+
+    private void produce(SimStation station) {
+        productionAttempts++;
+        if (!ProductionStationAgent.produce(station.inventory, station.cycle++, station.forecast, scheduler.now())) {
+            stockouts++;
+        }
+    }
+
+    private void checkInventory(SimStation station) {
+        if (station.requestPending) {
+            return;
+        }
+        int items = ProductionStationAgent.itemsToOrder(station.forecast, station.inventory);
+        if (items != 0) {
+            // A station has one open order at a time, so its name keys the stock reservation
+            WarehouseStock.Pickup pickup = stock.reserve(station.name, items,
+                    ProductionStationAgent.orderQuantities(station.forecast, station.inventory, items),
+                    station.x, station.y, scheduler.now());
+            if (pickup == null) {
+                return; // Nothing in stock: try again at the next check
+            }
+            station.requestPending = true;
+            station.items = pickup.items;
+            station.ordered = pickup.quantities;
+            station.orderedAt = scheduler.now();
+            int urgency = ProductionStationAgent.orderUrgency(station.forecast, station.inventory, pickup.items);
+            TransportTask request = new TransportTask(0, pickup.items, pickup.x, pickup.y, station.x, station.y,
+                                                      urgency);
+            scheduler.schedule(messageDelay, () -> receiveRequest(station, request));
+        }
+    }
+
+    /**
+     * Delivery confirmation relayed by the coordinator: credit the order
+     */
+    private void confirmDelivery(SimStation station) {
+        for (int i = 0; i < station.inventory.length; i++) {
+            station.inventory[i] += station.ordered[i];
+            unitsDelivered += station.ordered[i];
+        }
+        itemsDelivered += Integer.bitCount(station.items);
+        station.forecast.recordLeadTime(scheduler.now() - station.orderedAt);
+        station.requestPending = false;
+        stock.take(station.name, scheduler.now()); // The station confirms the delivery to the stock
+    }
+
+    // ---- CoordinatorAgent model ----
+
+    /**
+     * A station's request reaches the coordinator of its pickup's zone
+     */
+    private void receiveRequest(SimStation station, TransportTask request) {
+        Zone zone = zoneAt(request.pickupX);
+        SimTask task = new SimTask(request.withNumber(++taskCounter), station, zone, scheduler.now());
+        zone.activeTasks.put(task.task.taskNumber, task);
+        if (zone.journal != null) {
+            zone.journal.created(task.task.taskNumber, taskCounter, task.createdAt, station.name, station.name,
+                                 TaskCodec.encodeTask(task.task));
+        }
+        zone.allocator.submit(task, scheduler.now());
+    }
+
+    // ---- TransportAgent model ----
+
+    private void executeTask(SimRobot robot, SimTask task) {
+        if (robot.current != task) {
+            return; // Released before the robot started it
+        }
+        TransportTask job = task.task;
+        int trip = robot.trip;
+        int toPickup = Math.max(0, planner.pathLength(robot.x, robot.y, job.pickupX, job.pickupY));
+        int toDelivery = Math.max(0, planner.pathLength(job.pickupX, job.pickupY, job.deliveryX, job.deliveryY));
+        task.startedAt = scheduler.now();
+        task.toPickup = toPickup;
+        task.toDelivery = toDelivery;
+        emptyTravel += toPickup;
+        loadedTravel += toDelivery;
+        long duration = TransportAgent.transportDurationMs(toPickup, toDelivery);
+        robot.freeAt = scheduler.now() + duration;
+        if (traffic == null) {
+            // At the pickup after the drive and one stage transition
+            scheduler.schedule((Math.max(toPickup, 1) + 1) * TransportAgent.MOVE_STEP_MS, () -> {
+                if (robot.trip == trip) {
+                    task.loaded = true;
+                }
+            });
+            scheduler.schedule(duration, () -> {
+                if (robot.trip == trip) {
+                    completeTask(robot, task);
+                }
+            });
+            return;
+        }
+        // Same stages as TransportBehaviour: drive, dock and handle, drive, dock and handle
+        int stopTicks = TransportAgent.ticksFor(TransportAgent.DOCKING_MS) +
+                TransportAgent.ticksFor(TransportAgent.HANDLING_MS) + 2;
+        long stopMs = stopTicks * TransportAgent.MOVE_STEP_MS;
+        long started = scheduler.now();
+        drive(robot, job.pickupX, job.pickupY, stopTicks, () -> {
+            task.loaded = true;
+            scheduler.schedule(stopMs, () ->
+                    drive(robot, job.deliveryX, job.deliveryY, stopTicks, () ->
+                            scheduler.schedule(stopMs, () -> {
+                                blockedMs += Math.max(0, scheduler.now() - started - duration);
+                                completeTask(robot, task);
+                            })));
+        });
+    }
+
+    /**
+     * Drive to a target along reserved timed routes, as TransportAgent's Leg
+     * does with a traffic agent: follow the route, and ask again from where a
+     * yield plan ends. A drive whose job is dropped is abandoned.
+     */
+    private void drive(SimRobot robot, int targetX, int targetY, int dwellTicks, Runnable arrived) {
+        int trip = robot.trip;
+        int from = map.nearestFreeCell(robot.x, robot.y);
+        int to = map.nearestFreeCell(targetX, targetY);
+        long step = TransportAgent.MOVE_STEP_MS;
+        long startTick = scheduler.now() / step + 1;
+        int[] route = traffic.plan(robot, from, to, startTick, dwellTicks);
+        if (route == null) {
+            // Unreachable target: no robot could get there, keep the model's timing
+            robot.x = targetX;
+            robot.y = targetY;
+            arrived.run();
+            return;
+        }
+        long arrival = (startTick + route.length - 1) * step;
+        scheduler.schedule(arrival - scheduler.now(), () -> {
+            if (robot.trip != trip) {
+                return;
+            }
+            int end = route[route.length - 1];
+            robot.x = map.cellX(end);
+            robot.y = map.cellY(end);
+            if (end == to) {
+                arrived.run();
+            } else {
+                drive(robot, targetX, targetY, dwellTicks, arrived);
+            }
+        });
+    }
+
+    /**
+     * The robot's answer to a release request, as TransportAgent.handleRelease:
+     * null if it drops the task (AGREE), otherwise the REFUSE reason
+     */
+    private String releaseTask(SimRobot robot, SimTask task, double bar) {
+        double cost;
+        if (robot.current == task) {
+            cost = task.loaded ? TransportAgent.HELD_LOADED :
+                    TransportAgent.drivingTaskCost(cellsToPickup(task), robot.battery,
+                                                   Math.max(0, robot.freeAt - scheduler.now()));
+        } else if (robot.queue.contains(task)) {
+            cost = robot.chainedCost(task, task);
+            if (cost < 0) {
+                cost = TransportAgent.HELD_NO_ROUTE;
+            }
+        } else {
+            cost = TransportAgent.HELD_UNKNOWN; // Finished, with the report still on its way
+        }
+        String refusal = TransportAgent.releaseRefusal(cost, bar);
+        if (refusal != null) {
+            return refusal;
+        }
+        if (robot.current == task) {
+            // Give back the rest of the trip and move on to the next queued job
+            robot.trip++;
+            if (traffic != null) {
+                traffic.release(robot);
+            }
+            emptyTravel -= cellsToPickup(task);
+            loadedTravel -= task.toDelivery;
+            endJob(robot);
+        } else {
+            robot.queue.remove(task);
+            scheduler.schedule(messageDelay, robot::publishStatus);
+        }
+        return null;
+    }
+
+    /**
+     * Cells the robot still has to drive to the task's pickup, from the time driven so far
+     */
+    private int cellsToPickup(SimTask task) {
+        return Math.max(0, task.toPickup - (int) ((scheduler.now() - task.startedAt) / TransportAgent.MOVE_STEP_MS));
+    }
+
+    private void completeTask(SimRobot robot, SimTask task) {
+        robot.x = task.task.deliveryX;
+        robot.y = task.task.deliveryY;
+        endJob(robot);
+
+        // The report reaches the coordinator after one message delay, and the
+        // station is credited when the coordinator relays it
+        scheduler.schedule(messageDelay, () -> task.zone.completed(task, robot));
+        scheduler.schedule(2 * messageDelay, () -> confirmDelivery(task.station));
+
+        tasksCompleted++;
+        completionLatencies.add(scheduler.now() - task.createdAt);
+    }
+
+    /**
+     * Account for the finished (or dropped) job and start the next queued one, if any
+     */
+    private void endJob(SimRobot robot) {
+        long busyTime = scheduler.now() - robot.busySince;
+        robot.busyTotal += busyTime;
+        robot.battery = Math.max(0, robot.battery - TransportAgent.BATTERY_DRAIN *
+                (int) (busyTime / TransportAgent.BATTERY_DRAIN_INTERVAL_MS));
+        robot.current = robot.queue.poll();
+        if (robot.current != null) {
+            // Chained job: the robot already holds it, so no allocation round trip
+            robot.busySince = scheduler.now();
+            executeTask(robot, robot.current);
+        } else {
+            robot.idleSince = scheduler.now();
+            if (zones.size() > 1) {
+                robot.findZone(); // The job may have ended in another zone
+            }
+        }
+        // Status update reaches the coordinator after one message delay
+        scheduler.schedule(messageDelay, robot::publishStatus);
+    }
+
+    // ---- Charging model (robot policy and coordinator dock scheduling) ----
+
+    private void planCharge(SimRobot robot) {
+        if (robot.chargeRequested || robot.charging || robot.current != null) {
+            return;
+        }
+        int need = TransportAgent.chargeNeed(robot.battery, scheduler.now() - robot.idleSince);
+        if (need == 0) {
+            return;
+        }
+        Zone zone = robot.zone;
+        robot.chargeRequested = true;
+        zone.robotIndex.update(robot.id, robot.x, robot.y, robot.battery, false);
+        scheduler.schedule(messageDelay, () -> requestDock(zone, robot, need == 2));
+    }
+
+    private void requestDock(Zone zone, SimRobot robot, boolean urgent) {
+        int dock = CoordinatorAgent.grantDock(map, zone.docks, zone.dockHolders, robot.x, robot.y, urgent,
+                                              zone.robotIndex.size(), zone.allocator.queued());
+        if (dock < 0) {
+            // Deferred: the robot waits for its next idle window
+            scheduler.schedule(messageDelay, () -> {
+                robot.chargeRequested = false;
+                robot.idleSince = scheduler.now();
+                robot.publishStatus();
+            });
+            return;
+        }
+        zone.dockHolders[dock] = robot;
+        charges++;
+        if (urgent) {
+            urgentCharges++;
+        }
+        int cell = zone.docks[dock];
+        int driveTicks = Math.max(0, planner.pathLength(robot.x, robot.y, map.cellX(cell), map.cellY(cell)));
+        scheduler.schedule(messageDelay, () -> {
+            robot.chargeRequested = false;
+            robot.charging = true;
+            robot.dockZone = zone;
+            long chargeMs = TransportAgent.chargeDurationMs(robot.battery);
+            if (traffic != null) {
+                drive(robot, map.cellX(cell), map.cellY(cell), (int) (chargeMs / TransportAgent.MOVE_STEP_MS),
+                        () -> scheduler.schedule(chargeMs, () -> finishCharge(robot, cell)));
+                return;
+            }
+            scheduler.schedule(driveTicks * TransportAgent.MOVE_STEP_MS + chargeMs, () -> finishCharge(robot, cell));
+        });
+    }
+
+    private void finishCharge(SimRobot robot, int cell) {
+        Zone grantor = robot.dockZone;
+        robot.battery = 100;
+        robot.x = map.cellX(cell);
+        robot.y = map.cellY(cell);
+        robot.charging = false;
+        robot.dockZone = null;
+        robot.idleSince = scheduler.now();
+        if (zones.size() > 1) {
+            robot.findZone(); // The dock may be in another zone
+        }
+        scheduler.schedule(messageDelay, () -> {
+            for (int i = 0; i < grantor.dockHolders.length; i++) {
+                if (grantor.dockHolders[i] == robot) {
+                    grantor.dockHolders[i] = null;
+                }
+            }
+            robot.publishStatus();
+        });
+    }
+
+    private void sampleAvailability() {
+        int available = 0;
+        for (SimRobot robot : robots) {
+            if (robot.battery > TransportAgent.BATTERY_THRESHOLD && !robot.charging) {
+                available++;
+            }
+        }
+        availabilitySamples++;
+        availableSum += available;
+        availableMin = Math.min(availableMin, available);
+    }
+
+    // ---- Driver ----
+
+    public void run(long durationMs) {
+        long wallStart = System.currentTimeMillis();
+        scheduler.runUntil(durationMs);
+        long wallTime = Math.max(1, System.currentTimeMillis() - wallStart);
+        report(durationMs, wallTime);
+        for (Zone zone : zones) {
+            if (zone.journal != null) {
+                zone.journal.close();
+            }
+        }
+    }
+
+    private void report(long durationMs, long wallTime) {
+        long busyTotal = 0;
+        for (SimRobot robot : robots) {
+            busyTotal += robot.busyTotal + (robot.current != null ? durationMs - robot.busySince : 0);
+        }
+        double hours = durationMs / 3600000.0;
+
+        System.out.println("========================================");
+        System.out.println("Warehouse simulation report");
+        System.out.println("========================================");
+        System.out.println("Robots: " + robots.size() + ", stations: " + stations.size() +
+                ", CFP fan-out: " + cfpFanout + ", message delay: " + messageDelay + " ms" +
+                ", allocation: " + allocationMode + ", robot queue depth: " + robotQueueDepth +
+                ", traffic control: " + (traffic != null ? "on" : "off") + ", zones: " + zones.size());
+        System.out.printf("Simulated %.1f min in %d ms wall time (%.0fx real time, %d events)%n",
+                durationMs / 60000.0, wallTime, (double) durationMs / wallTime, scheduler.eventsProcessed());
+        System.out.println("Tasks: " + taskCounter + " requested, " + tasksAssigned + " assigned, " +
+                tasksCompleted + " completed, " + tasksFailed + " failed");
+        System.out.printf("Throughput: %.1f tasks per simulated hour (%.2f per robot-hour)%n",
+                tasksCompleted / hours, tasksCompleted / hours / Math.max(1, robots.size()));
+        printLatency("Allocation latency (request -> assignment)", allocationLatencies);
+        printLatency("Completion latency (request -> delivery)", completionLatencies);
+        System.out.printf("Fleet travel: %d cells (%d empty to pickup, %d loaded), %.1f empty cells per task%n",
+                emptyTravel + loadedTravel, emptyTravel, loadedTravel,
+                tasksAssigned == 0 ? 0.0 : (double) emptyTravel / tasksAssigned);
+        System.out.printf("Fleet utilization: %.1f%%%n", 100.0 * busyTotal / ((double) robots.size() * durationMs));
+        System.out.printf("Fleet availability (battery above threshold, not charging): mean %.1f%%, min %.1f%%%n",
+                availabilitySamples == 0 ? 0.0 : 100.0 * availableSum / availabilitySamples / robots.size(),
+                availabilitySamples == 0 ? 0.0 : 100.0 * availableMin / robots.size());
+        System.out.println("Re-auction: " + tasksReassigned + " tasks released to a cheaper robot, " +
+                releasesRefused + " releases refused");
+        if (zones.size() > 1) {
+            System.out.println("Zones: " + robotsHandedOff + " robots handed off to busier zones");
+        }
+        System.out.println("Stale answers (late bids, release answers and reports): " + staleAnswers);
+        if (traffic != null) {
+            System.out.printf("Traffic: %d routes planned, %d yield plans, %d wait ticks, %.1f s blocked per task%n",
+                    traffic.plans(), traffic.yields(), traffic.waitTicks(),
+                    tasksCompleted == 0 ? 0.0 : blockedMs / 1000.0 / tasksCompleted);
+        }
+        System.out.println("Charges: " + charges + " (" + urgentCharges + " with a low battery)");
+        System.out.printf("Station stockouts: %.1f%% of production cycles%n",
+                productionAttempts == 0 ? 0.0 : 100.0 * stockouts / productionAttempts);
+        System.out.printf("Deliveries: %.1f units and %.2f item types per trip, %.2f trips per production cycle%n",
+                tasksCompleted == 0 ? 0.0 : (double) unitsDelivered / tasksCompleted,
+                tasksCompleted == 0 ? 0.0 : (double) itemsDelivered / tasksCompleted,
+                productionAttempts == 0 ? 0.0 : (double) tasksCompleted / productionAttempts);
+        System.out.println("Warehouse stock: " + stock.binCount() + " bins, " + stock.shortages() +
+                " orders short of stock");
+        for (Zone zone : zones) {
+            if (zone.journal != null) {
+                System.out.println("Journal (zone " + zone.index + "): " + zone.journal.size() + " bytes");
+            }
+        }
+    }
+
+    private static void printLatency(String label, List<Long> samples) {
+        if (samples.isEmpty()) {
+            System.out.println(label + ": no samples");
+            return;
+        }
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        long sum = 0;
+        for (long sample : sorted) {
+            sum += sample;
+        }
+        System.out.printf("%s: mean %.0f ms, p50 %d ms, p95 %d ms, max %d ms%n", label,
+                (double) sum / sorted.size(), percentile(sorted, 0.50), percentile(sorted, 0.95),
+                sorted.get(sorted.size() - 1));
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    public static void main(String[] args) {
+        int robotCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int stationCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long minutes = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        long messageDelay = args.length > 4 ? Long.parseLong(args[4]) : 5;
+        int fanout = args.length > 5 ? Integer.parseInt(args[5]) : CoordinatorAgent.DEFAULT_CFP_FANOUT;
+        CoordinatorAgent.AllocationMode mode = args.length > 6
+                ? CoordinatorAgent.AllocationMode.valueOf(args[6].toUpperCase())
+                : CoordinatorAgent.AllocationMode.GREEDY;
+        int queueDepth = args.length > 7 ? Integer.parseInt(args[7]) : TransportAgent.DEFAULT_QUEUED_TASKS;
+        boolean trafficControl = args.length <= 8 || !args[8].equalsIgnoreCase("FREE");
+        int zoneCount = args.length > 9 ? Integer.parseInt(args[9]) : 1;
+
+        new WarehouseSimulation(robotCount, stationCount, seed, messageDelay, fanout, mode, queueDepth,
+                                trafficControl, zoneCount).run(minutes * 60000);
+    }
+}
@@ -0,0 +1,366 @@
+package warehouse;
+
+import java.util.*;
+
+/**
+ * WarehouseStock - Bin inventory of the warehouse racks
+ *
+ * Every rack cell is a bin, picked from the aisle cell next to it, holding
+ * a quantity of several item types. For each item type a grid-bucket
+ * spatial index (as in RobotIndex) lists the bins that stock it, so the
+ * nearest bin able to supply an order is found by scanning the buckets in
+ * rings around the station instead of every bin.
+ *
+ * Stock moves in two steps: a station reserves the units of its order in
+ * one bin before it sends the request, and takes them out of the bin once
+ * the delivery is confirmed (or releases them if the order fails or is
+ * cancelled). Reserved units are not offered to other orders, so two
+ * stations never count on the same units. A bin item that falls to the
+ * reorder point is refilled by the supplier RESTOCK_MS later.
+ *
+ * Owned by one StockAgent, which stations message, so every station sees
+ * the same stock whatever container it runs in (or by a single station
+ * when no stock agent is running, and by the simulation). Not thread-safe.
+ */
+public class WarehouseStock {
+
+    static final int BIN_CAPACITY = 40;   // Units of each stocked item a bin is filled to
+    static final int REORDER_POINT = 8;   // A bin item at or below this is restocked
+    static final long RESTOCK_MS = 120000;
+    private static final int INDEX_CELL_SIZE = 4;
+
+    /**
+     * One rack bin and its stock, by ItemType ordinal
+     */
+    static class Bin {
+        final int x; // Pickup cell in the aisle
+        final int y;
+        final int[] onHand;
+        final int[] reserved;
+        final long[] restockAt; // 0 when no refill is due
+
+        Bin(int x, int y, int types) {
+            this.x = x;
+            this.y = y;
+            this.onHand = new int[types];
+            this.reserved = new int[types];
+            this.restockAt = new long[types];
+        }
+    }
+
+    /**
+     * Units reserved for one order, and the aisle cell to pick them up from
+     */
+    static class Pickup {
+        final int x;
+        final int y;
+        final int items;        // ItemType mask of what the bin supplies
+        final int[] quantities; // By ItemType ordinal
+
+        Pickup(int x, int y, int items, int[] quantities) {
+            this.x = x;
+            this.y = y;
+            this.items = items;
+            this.quantities = quantities;
+        }
+    }
+
+    /**
+     * An open reservation
+     */
+    private static class Hold {
+        final Bin bin;
+        final int[] quantities;
+
+        Hold(Bin bin, int[] quantities) {
+            this.bin = bin;
+            this.quantities = quantities;
+        }
+    }
+
+    private final int types = ItemType.values().length;
+    private final List<Bin> bins = new ArrayList<>();
+    private final int columns;
+    private final int rows;
+    private final List<List<List<Bin>>> index = new ArrayList<>(); // Item type -> bucket -> bins
+    private final int[] stockedBins = new int[types];
+    private final Map<String, Hold> holds = new HashMap<>(); // Open reservations by order
+    private long shortages; // Orders that no bin could supply in full
+
+    /**
+     * Stock for the racks of the given map, filled to BIN_CAPACITY: bins in
+     * even rows hold every item type, bins in odd rows all but one, rotating
+     * along the rack
+     */
+    public WarehouseStock(WarehouseMap map) {
+        this.columns = (map.width() + INDEX_CELL_SIZE - 1) / INDEX_CELL_SIZE;
+        this.rows = (map.height() + INDEX_CELL_SIZE - 1) / INDEX_CELL_SIZE;
+        for (int item = 0; item < types; item++) {
+            List<List<Bin>> buckets = new ArrayList<>(columns * rows);
+            for (int i = 0; i < columns * rows; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            index.add(buckets);
+        }
+        for (int y = 0; y < map.height(); y++) {
+            for (int x = 0; x < map.width(); x++) {
+                if (map.isFree(x, y)) {
+                    continue;
+                }
+                int pickupX = map.isFree(x - 1, y) ? x - 1 : map.isFree(x + 1, y) ? x + 1 : -1;
+                if (pickupX < 0) {
+                    continue; // Not reachable from an aisle
+                }
+                Bin bin = new Bin(pickupX, y, types);
+                bins.add(bin);
+                for (int item = 0; item < types; item++) {
+                    if (y % 2 == 0 || item != (x + y / 2) % types) {
+                        bin.onHand[item] = BIN_CAPACITY;
+                        index.get(item).get(bucketOf(pickupX, y)).add(bin);
+                        stockedBins[item]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserve an order in the bin nearest (x, y) that holds every requested
+     * item in the requested quantity. If no bin can, reserve what the best
+     * stocked nearby bin has of as many items as possible. Returns null when
+     * none of the items is in stock anywhere.
+     */
+    public Pickup reserve(String order, int items, int[] quantities, int x, int y, long now) {
+        release(order);
+        Bin bin = nearestCovering(items, quantities, x, y, now);
+        if (bin == null) {
+            shortages++;
+            bin = bestPartial(items, x, y, now);
+            if (bin == null) {
+                return null;
+            }
+        }
+        int supplied = 0;
+        int[] reserved = new int[types];
+        for (int item = 0; item < types; item++) {
+            if (ItemType.fromCode(item).in(items)) {
+                reserved[item] = Math.min(quantities[item], available(bin, item));
+                if (reserved[item] > 0) {
+                    bin.reserved[item] += reserved[item];
+                    supplied |= ItemType.fromCode(item).bit();
+                }
+            }
+        }
+        holds.put(order, new Hold(bin, reserved));
+        return new Pickup(bin.x, bin.y, supplied, reserved);
+    }
+
+    /**
+     * Take an order's reserved units out of its bin, once they have been
+     * delivered. Returns false if the order holds no reservation (already
+     * taken or released, or reserved with a stock that has since restarted).
+     */
+    public boolean take(String order, long now) {
+        Hold hold = holds.remove(order);
+        if (hold == null) {
+            return false;
+        }
+        for (int item = 0; item < types; item++) {
+            hold.bin.reserved[item] -= hold.quantities[item];
+        }
+        draw(hold.bin, hold.quantities, now);
+        return true;
+    }
+
+    /**
+     * Take a delivered pickup out of stock: the order's reservation, or if
+     * the order holds none (the stock was restarted since it was reserved),
+     * the same units from a bin at the pickup cell, so the stock still
+     * matches what left the racks. Returns false if there was no reservation.
+     */
+    public boolean take(String order, Pickup pickup, long now) {
+        if (take(order, now)) {
+            return true;
+        }
+        Bin from = null;
+        for (Bin bin : bins) {
+            if (bin.x == pickup.x && bin.y == pickup.y) {
+                restock(bin, now);
+                if (from == null || holds(bin, pickup.quantities)) {
+                    from = bin;
+                }
+            }
+        }
+        if (from != null) {
+            draw(from, pickup.quantities, now);
+        }
+        return false;
+    }
+
+    /**
+     * Drop an order's reservation, e.g. when its task failed or timed out
+     */
+    public void release(String order) {
+        Hold hold = holds.remove(order);
+        if (hold != null) {
+            for (int item = 0; item < types; item++) {
+                hold.bin.reserved[item] -= hold.quantities[item];
+            }
+        }
+    }
+
+    /**
+     * Units of an item in stock and not reserved, over all bins
+     */
+    public int available(ItemType type, long now) {
+        int total = 0;
+        for (Bin bin : bins) {
+            restock(bin, now);
+            total += available(bin, type.ordinal());
+        }
+        return total;
+    }
+
+    public int binCount() {
+        return bins.size();
+    }
+
+    public int openReservations() {
+        return holds.size();
+    }
+
+    public long shortages() {
+        return shortages;
+    }
+
+    /**
+     * Nearest bin (Manhattan distance) that can supply the whole order.
+     * Only the index of the item stocked in the fewest bins is scanned, in
+     * rings of buckets; the search stops once no unscanned ring can hold a
+     * closer bin.
+     */
+    private Bin nearestCovering(int items, int[] quantities, int x, int y, long now) {
+        int anchor = -1;
+        for (int item = 0; item < types; item++) {
+            if (ItemType.fromCode(item).in(items) && (anchor < 0 || stockedBins[item] < stockedBins[anchor])) {
+                anchor = item;
+            }
+        }
+        if (anchor < 0) {
+            return null;
+        }
+        List<List<Bin>> buckets = index.get(anchor);
+        int cx = Math.max(0, Math.min(columns - 1, x / INDEX_CELL_SIZE));
+        int cy = Math.max(0, Math.min(rows - 1, y / INDEX_CELL_SIZE));
+        Bin best = null;
+        int bestDistance = Integer.MAX_VALUE;
+
+        for (int ring = 0; ring <= Math.max(columns, rows); ring++) {
+            // Any bin in this ring is at least this far away
+            int lowerBound = ring == 0 ? 0 : (ring - 1) * INDEX_CELL_SIZE + 1;
+            if (best != null && bestDistance < lowerBound) {
+                break;
+            }
+            for (int bx = cx - ring; bx <= cx + ring; bx++) {
+                for (int by = cy - ring; by <= cy + ring; by++) {
+                    boolean onRing = Math.abs(bx - cx) == ring || Math.abs(by - cy) == ring;
+                    if (!onRing || bx < 0 || by < 0 || bx >= columns || by >= rows) {
+                        continue;
+                    }
+                    for (Bin bin : buckets.get(by * columns + bx)) {
+                        int distance = distance(bin, x, y);
+                        if (distance < bestDistance && covers(bin, items, quantities, now)) {
+                            best = bin;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Bin with some stock of the most requested items, nearest first; null
+     * if none of them is in stock
+     */
+    private Bin bestPartial(int items, int x, int y, long now) {
+        Bin best = null;
+        int bestCount = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Bin bin : bins) {
+            restock(bin, now);
+            int count = 0;
+            for (int item = 0; item < types; item++) {
+                if (ItemType.fromCode(item).in(items) && available(bin, item) > 0) {
+                    count++;
+                }
+            }
+            int distance = distance(bin, x, y);
+            if (count > bestCount || (count == bestCount && count > 0 && distance < bestDistance)) {
+                best = bin;
+                bestCount = count;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private boolean covers(Bin bin, int items, int[] quantities, long now) {
+        restock(bin, now);
+        for (int item = 0; item < types; item++) {
+            if (ItemType.fromCode(item).in(items) && available(bin, item) < quantities[item]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply refills that have arrived by now
+     */
+    private static void restock(Bin bin, long now) {
+        for (int item = 0; item < bin.onHand.length; item++) {
+            if (bin.restockAt[item] != 0 && now >= bin.restockAt[item]) {
+                bin.onHand[item] = BIN_CAPACITY;
+                bin.restockAt[item] = 0;
+            }
+        }
+    }
+
+    /**
+     * Remove units from a bin and order refills for items that fall to the reorder point
+     */
+    private static void draw(Bin bin, int[] quantities, long now) {
+        for (int item = 0; item < quantities.length; item++) {
+            if (quantities[item] == 0) {
+                continue;
+            }
+            bin.onHand[item] = Math.max(0, bin.onHand[item] - quantities[item]);
+            if (bin.onHand[item] <= REORDER_POINT && bin.restockAt[item] == 0) {
+                bin.restockAt[item] = now + RESTOCK_MS;
+            }
+        }
+    }
+
+    private static boolean holds(Bin bin, int[] quantities) {
+        for (int item = 0; item < quantities.length; item++) {
+            if (bin.onHand[item] < quantities[item]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int available(Bin bin, int item) {
+        return bin.onHand[item] - bin.reserved[item];
+    }
+
+    private int bucketOf(int x, int y) {
+        return (y / INDEX_CELL_SIZE) * columns + x / INDEX_CELL_SIZE;
+    }
+
+    private static int distance(Bin bin, int x, int y) {
+        return Math.abs(bin.x - x) + Math.abs(bin.y - y);
+    }
+}
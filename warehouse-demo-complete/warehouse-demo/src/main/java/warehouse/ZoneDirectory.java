@@ -0,0 +1,124 @@
+package warehouse;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.*;
+import jade.domain.FIPAException;
+import java.util.*;
+
+/**
+ * ZoneDirectory - Which coordinator owns which part of the warehouse
+ *
+ * The grid is split into vertical strips, one per coordinator. Each
+ * CoordinatorAgent registers the "task-coordinator" service with "zone"
+ * and "zones" properties; stations and robots search the DF and send each
+ * message to the coordinator of the zone it concerns. A coordinator
+ * registered without these properties covers the whole grid (zone 0 of 1).
+ */
+public class ZoneDirectory {
+
+    static final String SERVICE_TYPE = "task-coordinator";
+    static final String ZONE_PROPERTY = "zone";
+    static final String ZONES_PROPERTY = "zones";
+
+    private final int zones;
+    private final AID[] coordinators;
+
+    private ZoneDirectory(int zones) {
+        this.zones = zones;
+        this.coordinators = new AID[zones];
+    }
+
+    /**
+     * Search the DF for coordinators; returns null if none is registered yet
+     */
+    public static ZoneDirectory search(Agent agent) throws FIPAException {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(SERVICE_TYPE);
+        template.addServices(sd);
+        DFAgentDescription[] result = DFService.search(agent, template);
+        if (result.length == 0) {
+            return null;
+        }
+
+        int zones = 1;
+        int[] zoneOf = new int[result.length];
+        for (int i = 0; i < result.length; i++) {
+            ServiceDescription service = (ServiceDescription) result[i].getAllServices().next();
+            zoneOf[i] = intProperty(service, ZONE_PROPERTY, 0);
+            zones = Math.max(zones, intProperty(service, ZONES_PROPERTY, 1));
+        }
+        ZoneDirectory directory = new ZoneDirectory(zones);
+        for (int i = 0; i < result.length; i++) {
+            if (zoneOf[i] >= 0 && zoneOf[i] < zones && directory.coordinators[zoneOf[i]] == null) {
+                directory.coordinators[zoneOf[i]] = result[i].getName();
+            }
+        }
+        return directory;
+    }
+
+    private static int intProperty(ServiceDescription service, String name, int defaultValue) {
+        Iterator<?> properties = service.getAllProperties();
+        while (properties.hasNext()) {
+            Property property = (Property) properties.next();
+            if (name.equals(property.getName()) && property.getValue() != null) {
+                try {
+                    return Integer.parseInt(property.getValue().toString().trim());
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Zone of column x on a grid of the given width
+     */
+    static int zoneOf(int x, int width, int zones) {
+        int clamped = Math.max(0, Math.min(width - 1, x));
+        return clamped * zones / width;
+    }
+
+    /**
+     * First column of a zone's strip
+     */
+    static int zoneStart(int zone, int width, int zones) {
+        return (zone * width + zones - 1) / zones;
+    }
+
+    public int zones() {
+        return zones;
+    }
+
+    /**
+     * Coordinator for column x, falling back to the nearest zone that has one
+     */
+    public AID coordinatorFor(int x, int width) {
+        int zone = zoneOf(x, width, zones);
+        for (int offset = 0; offset < zones; offset++) {
+            if (zone - offset >= 0 && coordinators[zone - offset] != null) {
+                return coordinators[zone - offset];
+            }
+            if (zone + offset < zones && coordinators[zone + offset] != null) {
+                return coordinators[zone + offset];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Every registered coordinator other than self
+     */
+    public List<AID> peersOf(AID self) {
+        List<AID> peers = new ArrayList<>();
+        for (AID coordinator : coordinators) {
+            if (coordinator != null && !coordinator.equals(self)) {
+                peers.add(coordinator);
+            }
+        }
+        return peers;
+    }
+}
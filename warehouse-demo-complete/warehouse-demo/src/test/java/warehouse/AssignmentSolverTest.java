@@ -0,0 +1,59 @@
+package warehouse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static warehouse.AssignmentSolver.NO_BID;
+
+/**
+ * AssignmentSolver finds the minimum-cost matching on rectangular matrices
+ * and never matches a task to a robot that did not bid for it
+ */
+class AssignmentSolverTest {
+
+    @Test
+    void findsOptimumOnWideMatrix() {
+        double[][] cost = {
+                {1, 2, 9, 9},
+                {1, 9, 9, 9},
+                {9, 9, 3, 4},
+        };
+        // Greedy gives robot 0 to task 0 (total 13); the optimum moves task 0 to robot 1 (total 6)
+        assertArrayEquals(new int[] {1, 0, 2}, AssignmentSolver.solve(cost));
+    }
+
+    @Test
+    void leavesSurplusTasksUnmatchedOnTallMatrix() {
+        double[][] cost = {
+                {5, 1},
+                {2, 8},
+                {1, 9},
+                {7, 7},
+        };
+        assertArrayEquals(new int[] {1, -1, 0, -1}, AssignmentSolver.solve(cost));
+    }
+
+    @Test
+    void neverUsesMissingBids() {
+        double[][] cost = {
+                {NO_BID, NO_BID, NO_BID},
+                {4, NO_BID, 3},
+                {2, NO_BID, NO_BID},
+        };
+        // Task 0 has no bids and robot 1 bid for nothing; the rest is matched at cost 5
+        assertArrayEquals(new int[] {-1, 2, 0}, AssignmentSolver.solve(cost));
+
+        double[][] contested = {
+                {1, NO_BID},
+                {2, NO_BID},
+                {NO_BID, NO_BID},
+        };
+        assertArrayEquals(new int[] {0, -1, -1}, AssignmentSolver.solve(contested));
+    }
+
+    @Test
+    void emptyMatrixMatchesNothing() {
+        assertEquals(0, AssignmentSolver.solve(new double[0][0]).length);
+        assertArrayEquals(new int[] {-1, -1}, AssignmentSolver.solve(new double[2][0]));
+    }
+}
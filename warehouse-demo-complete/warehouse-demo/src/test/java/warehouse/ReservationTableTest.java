@@ -0,0 +1,69 @@
+package warehouse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ReservationTable plans are conflict-free against earlier ones, and a goal
+ * that stays held beyond the horizon yields a short retry plan
+ */
+class ReservationTableTest {
+
+    private static final int DWELL = 2;
+
+    @Test
+    void headOnRobotsNeitherMeetNorSwap() {
+        WarehouseMap map = new WarehouseMap(5, 5);
+        ReservationTable table = new ReservationTable(map);
+        int west = map.cell(0, 2);
+        int east = map.cell(4, 2);
+
+        int[] first = table.plan("robot1", west, east, 0, DWELL);
+        int[] second = table.plan("robot2", east, west, 0, DWELL);
+
+        assertEquals(east, first[first.length - 1]);
+        assertEquals(west, second[second.length - 1]);
+        int ticks = Math.max(first.length, second.length) + DWELL;
+        for (int t = 0; t < ticks; t++) {
+            assertNotEquals(at(first, t), at(second, t), "both robots in one cell at tick " + t);
+            boolean swap = at(first, t) == at(second, t + 1) && at(first, t + 1) == at(second, t);
+            assertFalse(swap);
+        }
+        assertEquals(2, table.plans());
+        assertEquals(0, table.yields());
+    }
+
+    @Test
+    void heldGoalGivesShortYieldPlan() {
+        WarehouseMap map = WarehouseMap.createDefault();
+        ReservationTable table = new ReservationTable(map);
+        int start = map.cell(0, 0);
+        int goal = map.cell(19, 19);
+        int pathLength = new PathPlanner(map).pathLength(0, 0, 19, 19);
+
+        // Another robot docks on the goal for longer than the planning horizon
+        table.plan("robot1", goal, goal, 0, ReservationTable.HORIZON_TICKS * 2);
+        int[] route = table.plan("robot2", start, goal, 0, DWELL);
+
+        assertNotNull(route);
+        assertNotEquals(goal, route[route.length - 1]);
+        assertTrue(route.length <= ReservationTable.RETRY_TICKS + 1);
+        assertTrue(route.length - 1 < pathLength);
+        assertEquals(start, route[0]);
+        assertEquals(1, table.yields());
+
+        // Once the goal is free the same request reaches it
+        table.release("robot1");
+        route = table.plan("robot2", start, goal, 0, DWELL);
+        assertEquals(goal, route[route.length - 1]);
+        assertEquals(pathLength + 1, route.length);
+    }
+
+    /**
+     * Cell of a planned route at a tick; the robot stays on its last cell afterwards
+     */
+    private static int at(int[] route, int tick) {
+        return route[Math.min(tick, route.length - 1)];
+    }
+}
@@ -0,0 +1,140 @@
+package warehouse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Recovery guarantees of TaskJournal: a torn last record and an interrupted
+ * compaction must both leave the journal readable with every committed change
+ */
+class TaskJournalTest {
+
+    private static final String NAME = "coordinator";
+    private static final String STATION = "station1@platform";
+    private static final String ROBOT = "robot1@platform";
+
+    @Test
+    void tornLastRecordReadsAsEndOfJournal(@TempDir File dir) throws IOException {
+        TaskJournal journal = TaskJournal.open(dir, NAME);
+        journal.created(1, 1, 1000, STATION, "order-1", payload(1));
+        journal.created(2, 2, 2000, STATION, "order-2", payload(2));
+        journal.assigned(1, 3000, ROBOT);
+        int end = journal.size();
+        journal.close();
+
+        // A FINISHED record for task 1 whose body reached the file but whose type byte did not
+        try (RandomAccessFile raf = new RandomAccessFile(generationFile(dir, 1), "rw")) {
+            raf.seek(end + 1);
+            raf.writeChar(4);
+            raf.writeInt(1);
+        }
+
+        TaskJournal recovered = TaskJournal.open(dir, NAME);
+        List<TaskJournal.Entry> open = new ArrayList<>(recovered.openTasks());
+        assertEquals(2, recovered.counter());
+        assertEquals(2, open.size());
+        assertEquals(ROBOT, open.get(0).assignee);
+        assertEquals(3000, open.get(0).assignedAt);
+        assertNull(open.get(1).assignee);
+        assertEquals("order-2", open.get(1).conversation);
+        assertEquals(end, recovered.size());
+
+        // New records overwrite the torn one
+        recovered.finished(1);
+        recovered.close();
+        TaskJournal reopened = TaskJournal.open(dir, NAME);
+        assertEquals(1, reopened.openTasks().size());
+        assertEquals(2, reopened.openTasks().iterator().next().taskNumber);
+        reopened.close();
+    }
+
+    @Test
+    void interruptedCompactionFallsBackToPreviousGeneration(@TempDir File dir) throws IOException {
+        TaskJournal journal = TaskJournal.open(dir, NAME);
+        journal.created(1, 1, 1000, STATION, "order-1", payload(1));
+        journal.created(2, 2, 2000, STATION, "order-2", payload(2));
+        journal.assigned(2, 3000, ROBOT);
+        journal.finished(1);
+        journal.close();
+
+        // The next generation was being written when the JVM died: its SNAPSHOT type byte is still 0
+        try (RandomAccessFile raf = new RandomAccessFile(generationFile(dir, 2), "rw")) {
+            raf.setLength(4096);
+            raf.seek(3);
+            raf.writeInt(2);
+            raf.writeLong(2);
+        }
+
+        TaskJournal recovered = TaskJournal.open(dir, NAME);
+        assertEquals(2, recovered.counter());
+        assertEquals(1, recovered.openTasks().size());
+        TaskJournal.Entry entry = recovered.openTasks().iterator().next();
+        assertEquals(2, entry.taskNumber);
+        assertEquals(ROBOT, entry.assignee);
+        assertFalse(generationFile(dir, 2).exists());
+        recovered.close();
+    }
+
+    @Test
+    void compactionKeepsOpenTasks(@TempDir File dir) throws IOException {
+        TaskJournal journal = new TaskJournal(dir, NAME, 1);
+        journal.created(1, 1, 1000, STATION, "order-1", payload(1));
+        journal.created(2, 2, 2000, STATION, "order-2", payload(2));
+        journal.assigned(2, 3000, ROBOT);
+        journal.finished(1);
+        journal.checkpoint();
+        journal.close();
+
+        TaskJournal recovered = TaskJournal.open(dir, NAME);
+        assertEquals(2, recovered.counter());
+        assertEquals(1, recovered.openTasks().size());
+        assertEquals(ROBOT, recovered.openTasks().iterator().next().assignee);
+        assertTrue(generationFile(dir, 2).exists());
+        assertFalse(generationFile(dir, 1).exists());
+        recovered.close();
+    }
+
+    @Test
+    void growsPastInitialMapping(@TempDir File dir) throws IOException {
+        TaskJournal journal = TaskJournal.open(dir, NAME);
+        int tasks = 0;
+        while (journal.size() <= TaskJournal.INITIAL_MAPPING) {
+            tasks++;
+            journal.created(tasks, tasks, tasks, STATION, "order-" + tasks, payload(tasks));
+            journal.assigned(tasks, tasks + 1, ROBOT);
+            if (tasks % 2 == 0) {
+                journal.finished(tasks);
+            }
+        }
+        assertFalse(journal.failed());
+        journal.close();
+
+        TaskJournal recovered = TaskJournal.open(dir, NAME);
+        assertEquals(tasks, recovered.counter());
+        assertEquals((tasks + 1) / 2, recovered.openTasks().size());
+        TaskJournal.Entry last = null;
+        for (TaskJournal.Entry entry : recovered.openTasks()) {
+            last = entry;
+        }
+        assertEquals(tasks - (tasks + 1) % 2, last.taskNumber);
+        assertEquals(ROBOT, last.assignee);
+        assertTrue(recovered.size() > TaskJournal.INITIAL_MAPPING);
+        recovered.close();
+    }
+
+    private static byte[] payload(int taskNumber) {
+        return TaskCodec.encodeTask(new TransportTask(taskNumber, ItemType.WOOD_PLANKS, 7, 13, 10, 10, 20));
+    }
+
+    private static File generationFile(File dir, long generation) {
+        return new File(dir, NAME + "." + generation + ".journal");
+    }
+}